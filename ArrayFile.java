@@ -0,0 +1,169 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// The files behind PERSIST arrays (-v PERSIST=totals:/var/lib/javawk/totals.db). An array named there gets read from its file
+// the first time the program touches it, and written back once END is done, so the next run picks up where this one left off.
+// The file is a header (magic, version, element count) and then one record per element: key length and key (UTF-8),
+// a tag, then the value as a double for numbers that came from arithmetic or as length and UTF-8 bytes for everything else.
+// Strings from input are tagged apart from other strings, so they still compare as numbers after loading.
+public final class ArrayFile {
+    private static final int MAGIC = 0x4A41574B; // "JAWK"
+    private static final int VERSION = 1;
+    private static final byte STRING = 0, NUMBER = 1, STRNUM = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private ArrayFile(){}
+
+    // Fills array with what's in the file. A file that isn't there yet is just an empty array
+    public static void read(Path file, InterpreterArrayDataType array) throws IOException {
+        if(!Files.exists(file))
+            return;
+        try(Input in = new Input(file)){
+            if(in.readInt() != MAGIC)
+                throw new IOException("%s isn't a JavAWK array file".formatted(file));
+            int version = in.readInt();
+            if(version != VERSION)
+                throw new IOException("%s is array file version %d, only version %d can be read".formatted(file, version, VERSION));
+            int count = in.readInt();
+            for(int i = 0; i < count; i++){
+                String key = new String(in.readBytes(i), StandardCharsets.UTF_8);
+                InterpreterDataType value = switch(in.readByte()){
+                    case NUMBER -> new InterpreterDataType(in.readDouble());
+                    case STRING -> new InterpreterDataType(new String(in.readBytes(i), StandardCharsets.UTF_8));
+                    case STRNUM -> InterpreterDataType.strnum(new String(in.readBytes(i), StandardCharsets.UTF_8));
+                    default -> throw new IOException("%s is corrupt, bad value tag in element %d".formatted(file, i + 1));
+                };
+                array.put(key, value);
+            }
+        } catch(EOFException e){
+            throw new IOException("%s is cut short".formatted(file), e);
+        }
+    }
+
+    // Writes the array out next to the file and then moves it into place, so a run that dies halfway through
+    // leaves the last good file alone
+    public static void write(Path file, InterpreterArrayDataType array) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            copyPermissions(file, temporary);
+            try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))){
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(array.size());
+                IOException[] failure = new IOException[1];
+                array.forEach((key, value) -> {
+                    if(failure[0] != null)
+                        return;
+                    if(value instanceof InterpreterArrayDataType)
+                        throw new IllegalArgumentException("Can't save an array inside an array to %s".formatted(file));
+                    try {
+                        writeBytes(out, key.getBytes(StandardCharsets.UTF_8));
+                        if(value.isComputed()){
+                            out.writeByte(NUMBER);
+                            out.writeDouble(value.getNumber());
+                        } else {
+                            out.writeByte(value.isStrnum() ? STRNUM : STRING);
+                            writeBytes(out, value.getValue().getBytes(StandardCharsets.UTF_8));
+                        }
+                    } catch(IOException e){
+                        failure[0] = e;
+                    }
+                });
+                if(failure[0] != null)
+                    throw failure[0];
+                out.flush();
+                channel.force(true); // On disk before the rename, or a crash could leave a renamed file that's empty or half written
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // The temporary file starts out readable by its owner only, the file it replaces keeps whatever permissions it had
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        if(!Files.exists(from))
+            return;
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch(UnsupportedOperationException e){
+            // Not a POSIX file system, nothing to copy
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Reads the file keeping count of how far it's gotten, so a length read from it can be checked against what's
+    // actually left before anything gets allocated. A corrupt length would otherwise be an OutOfMemoryError
+    private static final class Input extends DataInputStream {
+        private final Path file;
+        private final long size;
+
+        Input(Path file) throws IOException {
+            super(new Counting(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)));
+            this.file = file;
+            this.size = Files.size(file);
+        }
+
+        // A length, then that many bytes
+        byte[] readBytes(int element) throws IOException {
+            int length = readInt();
+            long left = size - ((Counting) in).count;
+            if(length < 0 || length > left)
+                throw new IOException("%s is corrupt, element %d has a length of %d with %d bytes left".formatted(file, element + 1, length, left));
+            byte[] bytes = new byte[length];
+            readFully(bytes);
+            return bytes;
+        }
+    }
+
+    private static final class Counting extends FilterInputStream {
+        long count;
+
+        Counting(InputStream in){
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if(b != -1)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = in.read(bytes, offset, length);
+            if(read > 0)
+                count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
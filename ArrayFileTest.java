@@ -0,0 +1,167 @@
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ArrayFileTest {
+
+    private static Path temporaryFile() throws IOException {
+        Path file = Files.createTempFile("array", ".db");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    private static InterpreterArrayDataType read(Path file) throws IOException {
+        InterpreterArrayDataType array = new InterpreterArrayDataType();
+        ArrayFile.read(file, array);
+        return array;
+    }
+
+    // A file by hand: the header, then whatever records the test wants
+    private static Path fileWith(int magic, int version, int count, byte[] records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeInt(count);
+        out.write(records);
+        Path file = temporaryFile();
+        Files.write(file, bytes.toByteArray());
+        return file;
+    }
+
+    private static byte[] record(String key, int tag, String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        out.writeByte(tag);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(valueBytes.length);
+        out.write(valueBytes);
+        return bytes.toByteArray();
+    }
+
+    private static void assertCorrupt(String expectedMessage, Path file){
+        IOException e = assertThrows(IOException.class, () -> read(file));
+        assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        InterpreterArrayDataType array = new InterpreterArrayDataType();
+        array.put(new InterpreterDataType(1), new InterpreterDataType(2.5));
+        array.put(new InterpreterDataType("007"), new InterpreterDataType("007"));
+        array.put(new InterpreterDataType("field"), InterpreterDataType.strnum("42"));
+        array.put(new InterpreterDataType(""), InterpreterDataType.EMPTY);
+        array.put(new InterpreterDataType("café\034x"), new InterpreterDataType("日本"));
+        Path file = temporaryFile();
+        ArrayFile.write(file, array);
+
+        InterpreterArrayDataType loaded = read(file);
+        assertEquals(array, loaded);
+        InterpreterDataType number = loaded.get(new InterpreterDataType("1"));
+        assertTrue(number.isComputed());
+        assertEquals(2.5, number.getNumber(), 0);
+        InterpreterDataType string = loaded.get(new InterpreterDataType("007"));
+        assertFalse(string.isStrnum());
+        assertEquals("007", string.getValue());
+        InterpreterDataType strnum = loaded.get(new InterpreterDataType("field"));
+        assertTrue(strnum.isStrnum()); // Still compares as a number
+        assertTrue(strnum.isNumeric());
+
+        // Writing over it leaves only the new contents
+        InterpreterArrayDataType smaller = new InterpreterArrayDataType();
+        for(int i = 0; i < 1000; i++)
+            smaller.put(new InterpreterDataType(i), new InterpreterDataType(i * i));
+        ArrayFile.write(file, smaller);
+        assertEquals(smaller, read(file));
+        assertEquals(1000, read(file).size());
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        Path file = temporaryFile();
+        Files.delete(file);
+        assertEquals(0, read(file).size());
+        ArrayFile.write(file.resolveSibling("new-dir").resolve("array.db"), read(file)); // Directories get made on the way
+        assertEquals(0, read(file.resolveSibling("new-dir").resolve("array.db")).size());
+        Files.delete(file.resolveSibling("new-dir").resolve("array.db"));
+        Files.delete(file.resolveSibling("new-dir"));
+    }
+
+    @Test
+    public void testCorrupt() throws IOException {
+        byte[] good = record("k", 0, "v");
+        assertEquals(1, read(fileWith(0x4A41574B, 1, 1, good)).size());
+
+        assertCorrupt("isn't a JavAWK array file", fileWith(0x12345678, 1, 1, good));
+        assertCorrupt("is array file version 2, only version 1 can be read", fileWith(0x4A41574B, 2, 1, good));
+        assertCorrupt("bad value tag in element 2", fileWith(0x4A41574B, 1, 2, concat(good, record("x", 9, "v"))));
+        assertCorrupt("is cut short", fileWith(0x4A41574B, 1, 2, good)); // Says two, only has one
+        assertCorrupt("element 1 has a length of 1 with 0 bytes left", fileWith(0x4A41574B, 1, 1, Arrays.copyOf(good, good.length - 1)));
+        assertCorrupt("element 1 has a length of -1", fileWith(0x4A41574B, 1, 1, new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}));
+        // A length that's garbage gets caught before anything's allocated for it, not as an OutOfMemoryError
+        assertCorrupt("element 1 has a length of 2147483647 with 0 bytes left", fileWith(0x4A41574B, 1, 1, new byte[]{0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}));
+        assertCorrupt("element 2 has a length of 2000000000", fileWith(0x4A41574B, 1, 2, concat(good, new byte[]{0x77, 0x35, (byte) 0x94, 0x00})));
+        Path empty = temporaryFile();
+        assertCorrupt("is cut short", empty);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second){
+        byte[] both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        return both;
+    }
+
+    // Replacing a file keeps its permissions, rather than the owner-only ones the temporary file starts out with
+    @Test
+    public void testPermissionsKept() throws IOException {
+        Path file = temporaryFile();
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r--r--");
+        try {
+            Files.setPosixFilePermissions(file, permissions);
+        } catch(UnsupportedOperationException e){
+            return; // Nothing to check off POSIX
+        }
+        ArrayFile.write(file, new InterpreterArrayDataType());
+        assertEquals(permissions, Files.getPosixFilePermissions(file));
+    }
+
+    // A failed load leaves the array still waiting on its file, so it isn't taken as loaded (and saved over the file)
+    @Test
+    public void testFailedLoadKeepsFile() throws IOException {
+        Path file = fileWith(0x4A41574B, 1, 2, record("k", 0, "v")); // Says two, only has one
+        InterpreterArrayDataType array = new InterpreterArrayDataType();
+        array.loadLazily(file, UncheckedIOException::new);
+        assertThrows(UncheckedIOException.class, array::size);
+        assertFalse(array.isLoaded());
+        assertThrows(UncheckedIOException.class, array::size); // Still fails the same way, not an array with just "k" in it
+    }
+
+    // A PERSIST file that can't be read is an interpreter error naming the array and the file, whenever the array's first touched
+    @Test
+    public void testPersistLoadFailure() throws IOException {
+        Path file = fileWith(0x12345678, 1, 0, new byte[0]);
+        new Interpreter(new Parser(new Lexer("BEGIN { x = 1 }").lex()).parse(), new HashMap<>(Map.of("PERSIST", "totals:" + file)));
+        InterpreterArrayDataType totals = (InterpreterArrayDataType) Interpreter.getGlobalVariable("totals").orElseThrow();
+        RuntimeException e = assertThrows(RuntimeException.class, totals::size);
+        assertEquals("Interpreter$AwkInterpreterException", e.getClass().getName());
+        assertEquals("Could not load PERSIST array totals from " + file, e.getMessage());
+        assertTrue(e.getCause() instanceof IOException);
+    }
+}
@@ -0,0 +1,21 @@
+import java.util.function.BiConsumer;
+
+// String-keyed storage behind an AWK array once it's out of dense mode (see InterpreterArrayDataType).
+// StringHashTable keeps everything on the heap, OffHeapTable moves it out when arrays get too big for it.
+public interface ArrayTable {
+
+    // null if the key isn't there
+    InterpreterDataType get(String key);
+
+    void put(String key, InterpreterDataType value);
+
+    // True if the key was there
+    boolean remove(String key);
+
+    int size();
+
+    void forEach(BiConsumer<String, InterpreterDataType> action);
+
+    // Elements added or removed while a loop runs over these may or may not show up, but the loop never fails
+    Iterable<InterpreterDataType> values();
+}
@@ -0,0 +1,65 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Strings every input file together into one long stream of records, like awk walking through ARGV.
+// Files are opened lazily, the next one only once the current one runs dry, so only one is ever open at a time.
+public class ChainedRecordSource implements RecordSource {
+
+    // Opening a file can fail, so java.util.function.Function doesn't quite cut it
+    @FunctionalInterface
+    public interface Opener {
+        RecordSource open(Path path) throws IOException;
+    }
+
+    private final Iterator<Path> paths;
+    private final Opener opener;
+    private final Consumer<Path> onNextFile; // Lets the interpreter update FILENAME/FNR at each boundary
+    private RecordSource current;
+    private RecordSeparator separator = RecordSeparator.NEWLINE; // Handed to every file as it gets opened
+
+    public ChainedRecordSource(List<Path> paths, Opener opener, Consumer<Path> onNextFile){
+        this.paths = paths.iterator();
+        this.opener = opener;
+        this.onNextFile = onNextFile;
+    }
+
+    @Override
+    public CharSequence nextRecord() throws IOException {
+        CharSequence record;
+        while(true){
+            if(current == null){
+                if(!paths.hasNext())
+                    return null; // Out of files
+                Path path = paths.next();
+                current = opener.open(path);
+                if(separator != RecordSeparator.NEWLINE)
+                    current.setRecordSeparator(separator);
+                onNextFile.accept(path);
+            }
+
+            if((record = current.nextRecord()) != null)
+                return record;
+
+            // This file is done, move on to the next one
+            current.close();
+            current = null;
+        }
+    }
+
+    @Override
+    public void setRecordSeparator(RecordSeparator separator){
+        this.separator = separator;
+        if(current != null)
+            current.setRecordSeparator(separator);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(current != null)
+            current.close();
+        current = null;
+    }
+}
@@ -0,0 +1,108 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ChainedRecordSourceTest {
+
+    private static Path write(String contents) throws IOException {
+        Path file = Files.createTempFile("chained", ".txt");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, contents, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    // Files as in-memory streams, with every open and close written down in events
+    private static ChainedRecordSource chain(Map<String, String> files, List<String> events){
+        List<Path> paths = new ArrayList<>();
+        for(String name : files.keySet())
+            paths.add(Path.of(name));
+        return new ChainedRecordSource(paths, path -> {
+            events.add("open " + path);
+            return new StreamRecordSource(new StringReader(files.get(path.toString()))){
+                @Override
+                public void close() throws IOException {
+                    events.add("close " + path);
+                    super.close();
+                }
+            };
+        }, path -> events.add("start " + path));
+    }
+
+    @Test
+    public void testFilesInOrder() throws IOException {
+        List<String> events = new ArrayList<>();
+        Map<String, String> files = new LinkedHashMap<>();
+        files.put("empty1", "");
+        files.put("a", "a1\na2"); // No newline on the last record
+        files.put("empty2", "");
+        files.put("b", "b1\n");
+        files.put("empty3", "");
+        List<String> records = new ArrayList<>();
+        try(ChainedRecordSource source = chain(files, events)){
+            CharSequence record;
+            while((record = source.nextRecord()) != null){
+                records.add(record.toString());
+                events.add("record " + record);
+            }
+            assertNull(source.nextRecord()); // Stays done
+        }
+        assertEquals(List.of("a1", "a2", "b1"), records); // a2 doesn't run into b1
+        // Each file is only opened once the one before it is closed, and empty ones still get started (FNR reset, FILENAME set)
+        assertEquals(List.of(
+            "open empty1", "start empty1", "close empty1",
+            "open a", "start a", "record a1", "record a2", "close a",
+            "open empty2", "start empty2", "close empty2",
+            "open b", "start b", "record b1", "close b",
+            "open empty3", "start empty3", "close empty3"), events);
+    }
+
+    @Test
+    public void testNoFiles() throws IOException {
+        List<String> events = new ArrayList<>();
+        try(ChainedRecordSource source = chain(Map.of(), events)){
+            assertNull(source.nextRecord());
+        }
+        assertEquals(List.of(), events);
+    }
+
+    // RS set before a file is opened still applies to it
+    @Test
+    public void testSeparatorCarriesOver() throws IOException {
+        Map<String, String> files = new LinkedHashMap<>();
+        files.put("a", "x;y");
+        files.put("b", "z;w;");
+        try(ChainedRecordSource source = chain(files, new ArrayList<>())){
+            source.setRecordSeparator(RecordSeparator.compile(";"));
+            List<String> records = new ArrayList<>();
+            CharSequence record;
+            while((record = source.nextRecord()) != null)
+                records.add(record.toString());
+            assertEquals(List.of("x", "y", "z", "w"), records);
+        }
+    }
+
+    // NR keeps counting across files, FNR starts over and FILENAME changes at each one
+    @Test
+    public void testFnrAndFilename() throws IOException {
+        Path empty = write("");
+        Path first = write("one\ntwo\nthree"); // No newline at the end
+        Path second = write("four\n");
+        ProgramNode program = new Parser(new Lexer("BEGIN { seen = \"\" } { seen = seen NR \" \" FNR \" \" FILENAME \" \" $0 \"|\" } END { last = NR \" \" FNR \" \" FILENAME }").lex()).parse();
+        new Interpreter(program, List.of(empty, first, empty, second, empty), new HashMap<>(), false, false).interpretProgram();
+
+        String expected = "1 1 %1$s one|2 2 %1$s two|3 3 %1$s three|4 1 %2$s four|".formatted(first, second);
+        assertEquals(new InterpreterDataType(expected), Interpreter.getGlobalVariable("seen").orElseThrow());
+        assertEquals(new InterpreterDataType("4 0 " + empty), Interpreter.getGlobalVariable("last").orElseThrow()); // The last file was empty
+    }
+}
@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.zip.GZIPInputStream;
+
+// Decompresses input files, picked by file extension. Gzip comes built in, others can be plugged in
+// by implementing this and listing the class in META-INF/services/Codec on the classpath.
+public interface Codec {
+    List<Codec> KNOWN = load(); // Built in ones first, then anything ServiceLoader finds
+
+    // The file extension this codec handles, dot included, e.g. ".gz"
+    String extension();
+
+    // Wraps the raw file contents in a stream of the decompressed bytes
+    InputStream decode(InputStream compressed) throws IOException;
+
+    // The codec for this file, or null if it doesn't look compressed
+    static Codec forPath(Path path){
+        String name = path.getFileName().toString();
+        for(Codec codec : KNOWN)
+            if(name.endsWith(codec.extension()))
+                return codec;
+        return null;
+    }
+
+    private static List<Codec> load(){
+        List<Codec> codecs = new ArrayList<>();
+        codecs.add(new Gzip());
+        ServiceLoader.load(Codec.class).forEach(codecs::add);
+        return List.copyOf(codecs);
+    }
+
+    class Gzip implements Codec {
+        public static final int BUFFER_SIZE = 1 << 16;
+
+        @Override
+        public String extension(){
+            return ".gz";
+        }
+
+        @Override
+        public InputStream decode(InputStream compressed) throws IOException {
+            return new GZIPInputStream(compressed, BUFFER_SIZE); // Also handles several gzip members concatenated together, like gzip -d does
+        }
+    }
+}
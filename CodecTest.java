@@ -0,0 +1,141 @@
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class CodecTest {
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try(GZIPOutputStream out = new GZIPOutputStream(compressed)){
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    // Enough lines to fill a good few of PipelinedInputStream's blocks, so the reader thread has to wait on the queue
+    private static byte[] lines(int count){
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < count; i++)
+            text.append("line ").append(i).append(' ').append("x".repeat(i % 50)).append('\n');
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static InputStream decode(byte[] compressed) throws IOException {
+        return new PipelinedInputStream(Codec.forPath(Path.of("input.gz")).decode(new ByteArrayInputStream(compressed)), "test");
+    }
+
+    @Test
+    public void testForPath(){
+        assertTrue(Codec.forPath(Path.of("/var/log/access.log.gz")) instanceof Codec.Gzip);
+        assertNull(Codec.forPath(Path.of("/var/log/access.log")));
+        assertNull(Codec.forPath(Path.of("archive.gz.txt")));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] original = lines(40000);
+        assertTrue(original.length > PipelinedInputStream.BLOCK_SIZE * (PipelinedInputStream.QUEUE_BLOCKS + 2));
+        try(InputStream in = decode(gzip(original))){
+            assertArrayEquals(original, in.readAllBytes());
+            assertEquals(-1, in.read());
+        }
+
+        // One byte at a time goes through the same blocks
+        byte[] small = lines(100);
+        try(InputStream in = decode(gzip(small))){
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            int b;
+            while((b = in.read()) != -1)
+                read.write(b);
+            assertArrayEquals(small, read.toByteArray());
+        }
+    }
+
+    @Test
+    public void testConcatenatedMembers() throws IOException {
+        // What cat a.gz b.gz > both.gz makes, gzip -d reads it as a.txt followed by b.txt
+        byte[] first = "first\n".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "second\n".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream both = new ByteArrayOutputStream();
+        both.write(gzip(first));
+        both.write(gzip(second));
+        try(InputStream in = decode(both.toByteArray())){
+            assertEquals("first\nsecond\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testRecordsFromCompressedInput() throws IOException {
+        try(StreamRecordSource source = new StreamRecordSource(decode(gzip("a b\nc d\n".getBytes(StandardCharsets.UTF_8))))){
+            assertEquals("a b", source.nextRecord());
+            assertEquals("c d", source.nextRecord());
+            assertNull(source.nextRecord());
+        }
+    }
+
+    @Test
+    public void testNotCompressed(){
+        // Caught right away, the gzip header is read when the stream is made
+        assertThrows(IOException.class, () -> decode("just text\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] compressed = gzip(lines(5000));
+        // The failure happens on the reader thread, and comes out of read once everything before it has been handed over
+        try(InputStream in = decode(Arrays.copyOf(compressed, compressed.length / 2))){
+            IOException e = assertThrows(IOException.class, in::readAllBytes);
+            assertEquals("Could not read input", e.getMessage());
+        }
+    }
+
+    // Anything the source throws comes out of read, the reader thread doesn't just die and leave read waiting
+    @Test(timeout = 10000)
+    public void testSourceThrows() throws IOException {
+        byte[] original = lines(5000);
+        for(Throwable thrown : new Throwable[]{new IllegalStateException("bad state"), new StackOverflowError("too deep")}){
+            InputStream failing = new InputStream(){
+                private final InputStream in = new ByteArrayInputStream(original);
+
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if(b == -1 && thrown instanceof RuntimeException e)
+                        throw e;
+                    if(b == -1)
+                        throw (Error) thrown;
+                    return b;
+                }
+            };
+            try(InputStream in = new PipelinedInputStream(failing, "test")){
+                Throwable e = assertThrows(Throwable.class, in::readAllBytes);
+                if(thrown instanceof Error)
+                    assertSame(thrown, e);
+                else {
+                    assertEquals("Could not read input", e.getMessage());
+                    assertSame(thrown, e.getCause());
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseEarly() throws IOException, InterruptedException {
+        // Stopping after the first line can't leave the reader thread stuck on a full queue
+        InputStream in = decode(gzip(lines(40000)));
+        assertEquals('l', in.read());
+        in.close();
+        for(Thread thread : Thread.getAllStackTraces().keySet())
+            if(thread.getName().equals("JavAWK reader (test)"))
+                thread.join();
+    }
+}
@@ -1,8 +1,15 @@
 public class ConstantNode<T> extends Node{
     private T value;
+    private final InterpreterDataType data; // What the interpreter gets every time this is evaluated, built once here
     
     ConstantNode(T value){
         this.value = value;
+        if(value instanceof Boolean bool)
+            this.data = InterpreterDataType.of(bool);
+        else if(value instanceof Number number)
+            this.data = new InterpreterDataType(number.doubleValue()); // Numeric literals are numbers, not strings that look like one
+        else
+            this.data = new InterpreterDataType(value.toString()); // A plain string, not a strnum: "10" < "9" compares as text however it looks
     }
     
     public String getValue(){
@@ -12,6 +19,10 @@ public class ConstantNode<T> extends Node{
         return value.toString();
     }
     
+    public InterpreterDataType getData(){
+        return data;
+    }
+    
     
     
     public String toString(){
@@ -0,0 +1,76 @@
+// Splits CSV records (RFC 4180) in one pass: fields are separated by commas, and a field wrapped in double quotes
+// can contain commas, newlines and "" for a literal quote. The quotes themselves aren't part of the field.
+// Fields are still handed out one at a time, so LineManager only pays for the fields it actually asks for.
+public class CsvFieldSplitter implements FieldSplitter {
+    private CharSequence record;
+    private int index; // Start of the next field, past the end once we're done
+
+    @Override
+    public void reset(CharSequence record){
+        this.record = record;
+        // An empty record has no fields at all, not one empty one
+        this.index = record.length() == 0 ? 1 : 0;
+    }
+
+    @Override
+    public CharSequence next(){
+        if(index > record.length())
+            return null;
+        if(index < record.length() && record.charAt(index) == '"')
+            return nextQuoted();
+
+        int start = index;
+        int end = moveToNextField(start);
+        return record.subSequence(start, end);
+    }
+
+    @Override
+    public boolean skip(){
+        if(index > record.length())
+            return false;
+        if(index < record.length() && record.charAt(index) == '"')
+            return nextQuoted() != null; // Has to walk the quotes properly anyway
+        moveToNextField(index);
+        return true;
+    }
+
+    private CharSequence nextQuoted(){
+        int length = record.length();
+        int start = index + 1; // Past the opening quote
+        int i = start;
+        StringBuilder unescaped = null; // Only needed if the field has "" in it, otherwise the field is just a slice of the record
+
+        while(i < length){
+            char c = record.charAt(i);
+            if(c == '"'){
+                if(i + 1 < length && record.charAt(i + 1) == '"'){
+                    // "" is an escaped quote
+                    if(unescaped == null)
+                        unescaped = new StringBuilder().append(record, start, i);
+                    unescaped.append('"');
+                    i += 2;
+                    continue;
+                }
+                break; // Closing quote
+            }
+            if(unescaped != null)
+                unescaped.append(c);
+            i++;
+        }
+
+        CharSequence field = unescaped == null ? record.subSequence(start, i) : unescaped;
+        moveToNextField(Math.min(i + 1, length)); // Anything between the closing quote and the next comma gets dropped
+        return field;
+    }
+
+    // Finds the comma that ends the current field, points index past it and returns where the field ends
+    private int moveToNextField(int from){
+        for(int i = from; i < record.length(); i++)
+            if(record.charAt(i) == ','){
+                index = i + 1;
+                return i;
+            }
+        index = record.length() + 1; // Last field
+        return record.length();
+    }
+}
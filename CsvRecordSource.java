@@ -0,0 +1,62 @@
+import java.io.IOException;
+
+// Wraps another source for CSV input (RFC 4180). A quoted field is allowed to contain line breaks,
+// so whenever a line ends inside quotes the next line gets glued on (with the newline put back) until the quotes close.
+// Lines that don't leave a quote open are passed through untouched, views and all.
+public class CsvRecordSource implements RecordSource {
+    private final RecordSource lines;
+
+    public CsvRecordSource(RecordSource lines){
+        this.lines = lines;
+    }
+
+    @Override
+    public CharSequence nextRecord() throws IOException {
+        CharSequence line = lines.nextRecord();
+        if(line == null || !endsInsideQuotes(line, false))
+            return line;
+
+        StringBuilder record = new StringBuilder(line);
+        boolean inQuotes = true;
+        CharSequence next;
+        while(inQuotes && (next = lines.nextRecord()) != null){
+            record.append('\n').append(next);
+            inQuotes = endsInsideQuotes(next, true);
+        }
+        return record.toString(); // If the input ends with the quote still open, we just hand back what we have
+    }
+
+    // Runs the quote state over one line, the same way CsvFieldSplitter reads it: a quote only opens a quoted field
+    // right at the start of a field, so a bare " in the middle of an unquoted one (5" screen) is just a character.
+    // Inside quotes, "" is an escaped quote and any other " closes them
+    private static boolean endsInsideQuotes(CharSequence line, boolean inQuotes){
+        boolean fieldStart = !inQuotes;
+        for(int i = 0; i < line.length(); i++){
+            char c = line.charAt(i);
+            if(inQuotes){
+                if(c != '"')
+                    continue;
+                if(i + 1 < line.length() && line.charAt(i + 1) == '"')
+                    i++;
+                else
+                    inQuotes = false;
+            } else if(c == ',')
+                fieldStart = true;
+            else {
+                inQuotes = c == '"' && fieldStart;
+                fieldStart = false;
+            }
+        }
+        return inQuotes;
+    }
+
+    @Override
+    public void setRecordSeparator(RecordSeparator separator){
+        lines.setRecordSeparator(separator);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lines.close();
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CsvRecordSourceTest {
+
+    // Every record in the input, each split into its fields
+    private static List<List<String>> read(String input) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        CsvFieldSplitter splitter = new CsvFieldSplitter();
+        try(CsvRecordSource source = new CsvRecordSource(new StreamRecordSource(new StringReader(input)))){
+            CharSequence record;
+            while((record = source.nextRecord()) != null){
+                List<String> fields = new ArrayList<>();
+                splitter.reset(record);
+                CharSequence field;
+                while((field = splitter.next()) != null)
+                    fields.add(field.toString());
+                records.add(fields);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void testPlainFields() throws IOException {
+        assertEquals(List.of(List.of("a", "b", "c"), List.of("1", "", "3")), read("a,b,c\n1,,3\n"));
+        assertEquals(List.of(List.of("", "")), read(","));
+    }
+
+    @Test
+    public void testQuotedFields() throws IOException {
+        assertEquals(List.of(List.of("a,b", "c")), read("\"a,b\",c\n"));
+        assertEquals(List.of(List.of("say \"hi\"", "x")), read("\"say \"\"hi\"\"\",x\n"));
+        assertEquals(List.of(List.of("", "x")), read("\"\",x\n"));
+        assertEquals(List.of(List.of("ab", "e")), read("\"ab\"cd,e\n")); // Junk after the closing quote is dropped
+    }
+
+    @Test
+    public void testQuotedFieldsSpanningLines() throws IOException {
+        assertEquals(List.of(List.of("1", "line one\nline two", "3"), List.of("4", "5", "6")),
+                read("1,\"line one\nline two\",3\n4,5,6\n"));
+        // Several line breaks, a blank line, and an escaped quote right before one
+        assertEquals(List.of(List.of("a\n\nb \"\n", "c")), read("\"a\n\nb \"\"\n\",c\n"));
+        // Windows line endings inside the quotes come back as plain newlines
+        assertEquals(List.of(List.of("x\ny", "z"), List.of("w")), read("\"x\r\ny\",z\r\nw\r\n"));
+        // The input ending with the quote still open hands back what there is
+        assertEquals(List.of(List.of("open\nstill open")), read("\"open\nstill open\n"));
+    }
+
+    // A quote only opens a quoted field at the very start of the field. Anywhere else it's just part of the text,
+    // and it mustn't make the next line part of this record
+    @Test
+    public void testBareQuotes() throws IOException {
+        assertEquals(List.of(List.of("24\" monitor", "199"), List.of("next", "row")), read("24\" monitor,199\nnext,row\n"));
+        assertEquals(List.of(List.of("a\"b\"c", "d")), read("a\"b\"c,d\n"));
+        assertEquals(List.of(List.of("x", "5\""), List.of("y")), read("x,5\"\ny\n"));
+        // After a quoted field has closed, quotes in the junk before the comma don't reopen anything
+        assertEquals(List.of(List.of("a", "c"), List.of("d")), read("\"a\"b\",c\nd\n"));
+    }
+
+    @Test
+    public void testSkippingQuotedFields() throws IOException {
+        CsvFieldSplitter splitter = new CsvFieldSplitter();
+        splitter.reset("\"a,\"\"b\",c,\"d\"");
+        assertTrue(splitter.skip());
+        assertEquals("c", splitter.next().toString());
+        assertEquals("d", splitter.next().toString());
+        assertFalse(splitter.skip());
+    }
+}
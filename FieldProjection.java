@@ -0,0 +1,125 @@
+import java.util.BitSet;
+import java.util.Optional;
+
+// Works out which fields a program can possibly read, before it runs.
+// LineManager uses this to skip over fields nobody will ever ask for instead of building values for them.
+// Anything we can't pin down (a $ with a computed index, NF, assigning to a field...) means every field has to be kept.
+public class FieldProjection {
+    public static final FieldProjection ALL = new FieldProjection(true, new BitSet());
+
+    private final boolean allFields;
+    private final BitSet fields; // Constant field indexes the program references
+
+    private FieldProjection(boolean allFields, BitSet fields){
+        this.allFields = allFields;
+        this.fields = fields;
+    }
+
+    public boolean needs(int index){
+        return allFields || fields.get(index);
+    }
+
+    public boolean needsAll(){
+        return allFields;
+    }
+
+    public static FieldProjection analyze(ProgramNode program){
+        Collector collector = new Collector();
+        for(BlockNode block : program.getBegin())
+            collector.visit(block);
+        for(BlockNode block : program.getOther())
+            collector.visit(block);
+        for(BlockNode block : program.getEnd())
+            collector.visit(block);
+        for(FunctionDefinitionNode function : program.getFunctions())
+            for(StatementNode statement : function.getStatements())
+                collector.visit((Node) statement);
+
+        if(collector.allFields)
+            return ALL;
+        return new FieldProjection(false, collector.fields);
+    }
+
+    // Walks the whole tree, there's no visitor in the node classes so it's instanceof all the way down
+    private static class Collector {
+        private boolean allFields = false;
+        private final BitSet fields = new BitSet();
+
+        private void visit(Optional<? extends Node> node){
+            node.ifPresent(this::visit);
+        }
+
+        private void visit(Node node){
+            if(node == null || allFields) // Once everything is needed there's nothing left to learn
+                return;
+
+            if(node instanceof BlockNode block){
+                visit(block.getCondition());
+                for(StatementNode statement : block.getStatements())
+                    visit((Node) statement);
+            } else if(node instanceof AssignmentNode assignment){
+                if(assignment.getTarget() instanceof FieldReferenceNode field && !isRecord(field))
+                    allFields = true; // $0 gets rebuilt out of every field after this
+                visit(assignment.getTarget());
+                visit(assignment.getAssignedTo());
+            } else if(node instanceof FieldReferenceNode field){
+                visitField(field);
+            } else if(node instanceof VariableReferenceNode variable){
+                if(variable.getName().equals("NF"))
+                    allFields = true; // NF needs the full split anyway
+                visit(variable.getIndex());
+            } else if(node instanceof OperationNode operation){
+                visit(operation.getLeft());
+                visit(operation.getRight());
+            } else if(node instanceof TernaryNode ternary){
+                visit(ternary.getCondition());
+                visit(ternary.getTrueCase());
+                visit(ternary.getFalseCase());
+            } else if(node instanceof FunctionCallNode call){
+                for(Node argument : call.getArguments())
+                    visit(argument);
+            } else if(node instanceof ASTnode.ForNode forNode){
+                visit(forNode.getInit());
+                visit(forNode.getCondition());
+                visit(forNode.getUpdate());
+                visit(forNode.getMember());
+                visit(forNode.getCollection());
+                visit(forNode.getStatements());
+            } else if(node instanceof ASTnode.IfNode ifNode){
+                visit(ifNode.getCondition());
+                visit(ifNode.getStatements());
+                visit(ifNode.getElse());
+            } else if(node instanceof ASTnode.DeleteNode delete){
+                visit(delete.target);
+                for(Node index : delete.indices)
+                    visit(index);
+            } else if(node instanceof ASTnode.ReturnNode returnNode){
+                visit(returnNode.value);
+            } else if(node instanceof ASTnode syntax){
+                // While loops, break, continue
+                visit(syntax.getCondition());
+                visit(syntax.getStatements());
+            }
+            // Constants and regex literals don't reference anything
+
+            visit(node.getNext()); // Multidimensional indices and parenthesized lists hang off of next
+        }
+
+        private void visitField(FieldReferenceNode field){
+            Node index = field.getIndex().orElseThrow();
+            if(index instanceof ConstantNode<?> constant && !(index instanceof RegexNode)){
+                int fieldIndex = (int) NumericString.valueOf(constant.getValue()); // Same conversion the interpreter does
+                if(fieldIndex >= 0){
+                    fields.set(fieldIndex);
+                    return;
+                }
+                // Negative, that's an error at runtime so don't try to be clever about it
+            }
+            allFields = true; // $(expression), could be any field
+        }
+
+        private static boolean isRecord(FieldReferenceNode field){
+            return field.getIndex().orElseThrow() instanceof ConstantNode<?> constant && constant.getValue().matches("0(\\.0*)?");
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FieldProjectionTest {
+
+    private static FieldProjection analyze(String program){
+        return FieldProjection.analyze(new Parser(new Lexer(program).lex()).parse());
+    }
+
+    private static String run(String program, String input, String result) throws IOException {
+        Path file = Files.createTempFile("projection", ".txt");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, input, StandardCharsets.UTF_8);
+        new Interpreter(new Parser(new Lexer(program).lex()).parse(), List.of(file), new HashMap<>(), false, false).interpretProgram();
+        return Interpreter.getGlobalVariable(result).orElseThrow().getValue();
+    }
+
+    @Test
+    public void testConstantFields(){
+        FieldProjection projection = analyze("$3 > 10 { total[$1] += $3 } END { x = 1 }");
+        assertFalse(projection.needsAll());
+        assertTrue(projection.needs(1));
+        assertFalse(projection.needs(2));
+        assertTrue(projection.needs(3));
+        assertFalse(projection.needs(4));
+
+        // Inside functions too
+        projection = analyze("function f(a) { return $2 } { x = f(1) }");
+        assertTrue(projection.needs(2));
+        assertFalse(projection.needs(1));
+    }
+
+    @Test
+    public void testEverything(){
+        assertTrue(analyze("{ x = $i }").needsAll()); // Could be any field
+        assertTrue(analyze("{ x = NF }").needsAll());
+        assertTrue(analyze("{ $2 = \"b\" }").needsAll()); // $0 gets rebuilt out of all of them
+        assertFalse(analyze("{ $0 = \"a b\"; x = $1 }").needsAll()); // Assigning $0 just splits again
+    }
+
+    // Fields the program never names get skipped over, the ones it does still come out right
+    @Test
+    public void testProjectedSplit() throws IOException {
+        assertEquals("c", run("{ x = $3 }", "a b c d\n", "x"));
+        assertEquals("a|d", run("{ x = $1 \"|\" $4 }", "a b c d\n", "x"));
+        assertEquals("c", run("BEGIN { FS = \";\" } { x = $3 }", "a;b;c;d\n", "x"));
+        assertEquals("", run("BEGIN { FS = \";\" } { x = $3 }", "a;b;;d\n", "x")); // Empty fields count
+        assertEquals("", run("{ x = $3 }", "a\n", "x")); // Past the end is still past the end
+        assertEquals("a b c d", run("{ x = $3; y = $0 }", "a b c d\n", "y"));
+    }
+
+    // NF or a computed index splits every field, same answers
+    @Test
+    public void testFullSplit() throws IOException {
+        assertEquals("c", run("{ i = 3; x = $i }", "a b c d\n", "x"));
+        assertEquals("4 c", run("{ x = NF \" \" $3 }", "a b c d\n", "x"));
+    }
+
+    // Assigning a field needs every field, even ones never read, to put $0 back together
+    @Test
+    public void testFieldAssignment() throws IOException {
+        assertEquals("a B c d", run("{ $2 = \"B\"; x = $0 }", "a b c d\n", "x"));
+        assertEquals("a b c d E", run("{ $5 = \"E\"; x = $0 }", "a b c d\n", "x"));
+    }
+}
@@ -0,0 +1,261 @@
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Splits a record into fields one at a time, so LineManager can stop as soon as it has the field it needs.
+// compile() looks at FS once and picks the cheapest splitter that gets the same result, the regex engine is the last resort.
+public interface FieldSplitter {
+
+    // Start splitting a new record
+    void reset(CharSequence record);
+
+    // Returns the next field, or null once the record has no fields left
+    CharSequence next();
+
+    // Moves past the next field without building it, false if there wasn't one.
+    // Used for fields the program never references (see FieldProjection).
+    default boolean skip(){
+        return next() != null;
+    }
+
+    static FieldSplitter compile(String separator){
+        if(separator.equals(" "))
+            return new Whitespace(); // AWK's default, runs of blanks with leading/trailing ones ignored
+        if(separator.length() == 1)
+            return new SingleCharacter(separator.charAt(0)); // Any other single character is taken literally, even regex ones like "|"
+        if(!separator.isEmpty() && !containsRegexSyntax(separator))
+            return new Literal(separator);
+        return new Regex(Pattern.compile(separator));
+    }
+
+    private static boolean containsRegexSyntax(String separator){
+        for(int i = 0; i < separator.length(); i++)
+            if("\\^$.|?*+()[]{}".indexOf(separator.charAt(i)) != -1)
+                return true;
+        return false;
+    }
+
+    // FS = " ", fields are runs of anything that isn't a space, tab or newline
+    class Whitespace implements FieldSplitter {
+        private CharSequence record;
+        private int index;
+
+        @Override
+        public void reset(CharSequence record){
+            this.record = record;
+            this.index = 0;
+        }
+
+        @Override
+        public CharSequence next(){
+            int start = findField();
+            if(start == -1)
+                return null;
+            return record.subSequence(start, index);
+        }
+
+        @Override
+        public boolean skip(){
+            return findField() != -1;
+        }
+
+        // Returns where the next field starts and leaves index at its end, or -1 if there isn't one
+        private int findField(){
+            int length = record.length();
+            while(index < length && isBlank(record.charAt(index)))
+                index++;
+            if(index == length)
+                return -1;
+
+            int start = index;
+            while(index < length && !isBlank(record.charAt(index)))
+                index++;
+            return start;
+        }
+
+        private static boolean isBlank(char c){
+            return c == ' ' || c == '\t' || c == '\n';
+        }
+    }
+
+    // Shared bits for separators that cut the record at every occurrence, which means empty fields are possible
+    abstract class Delimited implements FieldSplitter {
+        protected CharSequence record;
+        protected int index; // Start of the next field, past the end once we're done
+
+        @Override
+        public void reset(CharSequence record){
+            this.record = record;
+            // An empty record has no fields at all, not one empty one
+            this.index = record.length() == 0 ? 1 : 0;
+        }
+
+        @Override
+        public CharSequence next(){
+            if(index > record.length())
+                return null;
+            int start = index;
+            int end = findSeparator(start);
+            if(end == -1){
+                // No separator left, the rest is the last field
+                index = record.length() + 1;
+                return record.subSequence(start, record.length());
+            }
+            return record.subSequence(start, end); // findSeparator already moved index past the separator
+        }
+
+        @Override
+        public boolean skip(){
+            if(index > record.length())
+                return false;
+            if(findSeparator(index) == -1)
+                index = record.length() + 1;
+            return true;
+        }
+
+        // Returns where the next separator starts and moves index past it, or -1 if there aren't any more
+        protected abstract int findSeparator(int from);
+    }
+
+    class SingleCharacter extends Delimited {
+        private final char separator;
+
+        public SingleCharacter(char separator){
+            this.separator = separator;
+        }
+
+        @Override
+        protected int findSeparator(int from){
+            for(int i = from; i < record.length(); i++)
+                if(record.charAt(i) == separator){
+                    index = i + 1;
+                    return i;
+                }
+            return -1;
+        }
+    }
+
+    // Multi-character separators with no regex syntax in them, matched as plain text
+    class Literal extends Delimited {
+        private final String separator;
+
+        public Literal(String separator){
+            this.separator = separator;
+        }
+
+        @Override
+        protected int findSeparator(int from){
+            char first = separator.charAt(0);
+            int last = record.length() - separator.length();
+            outer:
+            for(int i = from; i <= last; i++){
+                if(record.charAt(i) != first)
+                    continue;
+                for(int j = 1; j < separator.length(); j++)
+                    if(record.charAt(i + j) != separator.charAt(j))
+                        continue outer;
+                index = i + separator.length();
+                return i;
+            }
+            return -1;
+        }
+    }
+
+    class Regex extends Delimited {
+        private final Pattern pattern;
+        private Matcher matcher;
+
+        public Regex(Pattern pattern){
+            this.pattern = pattern;
+        }
+
+        @Override
+        public void reset(CharSequence record){
+            super.reset(record);
+            matcher = null; // Only made once a field is actually asked for
+        }
+
+        @Override
+        protected int findSeparator(int from){
+            if(matcher == null)
+                matcher = pattern.matcher(record);
+            boolean found = matcher.find(from);
+            while(found && matcher.end() == matcher.start())
+                found = matcher.find(); // Empty matches don't separate anything, find() steps past them by itself
+            if(!found)
+                return -1;
+            index = matcher.end();
+            return matcher.start();
+        }
+    }
+
+    // FIELDWIDTHS mode, for fixed-width records. Every field is a precomputed (offset, length) slice of the record,
+    // so getting to a field never has to look at the characters in front of it.
+    // Same syntax as gawk: widths separated by spaces, "skip:width" to jump over filler columns, and a final "*" for the rest of the record.
+    class FixedWidth implements FieldSplitter {
+        private final int[] offsets;
+        private final int[] lengths; // -1 means everything to the end of the record
+        private CharSequence record;
+        private int field; // Index of the next field
+
+        public FixedWidth(String widths){
+            String[] specs = widths.strip().split("[ \t]+");
+            offsets = new int[specs.length];
+            lengths = new int[specs.length];
+
+            int offset = 0;
+            for(int i = 0; i < specs.length; i++){
+                String spec = specs[i];
+                if(spec.equals("*")){
+                    if(i != specs.length - 1)
+                        throw new IllegalArgumentException("\"*\" can only be the last width");
+                    offsets[i] = offset;
+                    lengths[i] = -1;
+                    break;
+                }
+                int colon = spec.indexOf(':');
+                try {
+                    if(colon != -1){
+                        offset += Integer.parseInt(spec.substring(0, colon)); // Skip this many characters first
+                        spec = spec.substring(colon + 1);
+                    }
+                    lengths[i] = Integer.parseInt(spec);
+                } catch(NumberFormatException e){
+                    throw new IllegalArgumentException("\"%s\" is not a width".formatted(specs[i]));
+                }
+                if(lengths[i] < 0 || offset < 0)
+                    throw new IllegalArgumentException("widths can't be negative");
+                offsets[i] = offset;
+                offset += lengths[i];
+            }
+        }
+
+        @Override
+        public void reset(CharSequence record){
+            this.record = record;
+            this.field = 0;
+        }
+
+        @Override
+        public CharSequence next(){
+            if(!hasField())
+                return null;
+            int start = offsets[field];
+            int end = lengths[field] == -1 ? record.length() : Math.min(start + lengths[field], record.length()); // Short records get cut off fields
+            field++;
+            return record.subSequence(start, end);
+        }
+
+        @Override
+        public boolean skip(){
+            if(!hasField())
+                return false;
+            field++;
+            return true;
+        }
+
+        // Fields that would start past the end of the record just don't exist
+        private boolean hasField(){
+            return field < offsets.length && offsets[field] < record.length();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FieldSplitterTest {
+
+    private static List<String> split(FieldSplitter splitter, CharSequence record){
+        List<String> fields = new ArrayList<>();
+        splitter.reset(record);
+        CharSequence field;
+        while((field = splitter.next()) != null)
+            fields.add(field.toString());
+        return fields;
+    }
+
+    private static List<String> split(String separator, String record){
+        return split(FieldSplitter.compile(separator), record);
+    }
+
+    @Test
+    public void testCompile(){
+        assertTrue(FieldSplitter.compile(" ") instanceof FieldSplitter.Whitespace);
+        assertTrue(FieldSplitter.compile(",") instanceof FieldSplitter.SingleCharacter);
+        assertTrue(FieldSplitter.compile("|") instanceof FieldSplitter.SingleCharacter); // A single character is literal, even a regex one
+        assertTrue(FieldSplitter.compile("::") instanceof FieldSplitter.Literal);
+        assertTrue(FieldSplitter.compile("[,;]") instanceof FieldSplitter.Regex);
+        assertTrue(FieldSplitter.compile("a|b") instanceof FieldSplitter.Regex);
+    }
+
+    @Test
+    public void testWhitespace(){
+        assertEquals(List.of("a", "b", "c"), split(" ", "a b c"));
+        assertEquals(List.of("a", "b", "c"), split(" ", "  \ta   b\t\tc  ")); // Runs of blanks, leading and trailing ones ignored
+        assertEquals(List.of("a", "b"), split(" ", "a\nb"));
+        assertEquals(List.of(), split(" ", ""));
+        assertEquals(List.of(), split(" ", "   "));
+    }
+
+    @Test
+    public void testSingleCharacter(){
+        assertEquals(List.of("a", "b", "c"), split(",", "a,b,c"));
+        assertEquals(List.of("", "a", "", "b", ""), split(",", ",a,,b,")); // Every separator counts, so fields can be empty
+        assertEquals(List.of("a", "b"), split("|", "a|b"));
+        assertEquals(List.of("abc"), split(",", "abc"));
+        assertEquals(List.of(), split(",", "")); // No fields at all, not one empty one
+        assertEquals(List.of("", ""), split(",", ","));
+    }
+
+    @Test
+    public void testLiteral(){
+        assertEquals(List.of("a", "b", "c"), split("::", "a::b::c"));
+        assertEquals(List.of("a", ":b"), split("::", "a:::b"));
+        assertEquals(List.of("a:b"), split("::", "a:b"));
+        assertEquals(List.of("", "a", ""), split("::", "::a::"));
+        assertEquals(List.of("a", "b"), split("ab", "aabb")); // Separator that starts with a letter the field ends in
+    }
+
+    @Test
+    public void testRegex(){
+        assertEquals(List.of("a", "b", "c"), split("[,;]", "a,b;c"));
+        assertEquals(List.of("a", "b"), split(", *", "a,   b"));
+        assertEquals(List.of("a", "", "b"), split("[,;]", "a,;b"));
+        assertEquals(List.of("abc"), split("x*", "abc")); // Empty matches don't separate anything
+        assertEquals(List.of("a", "c"), split("x*", "axxc"));
+        assertEquals(List.of("a", "b", "c"), split(" *; *|x?", "a ; b;c")); // Matches empty everywhere but at the semicolons
+        assertEquals(List.of("", "a"), split("-*", "--a"));
+    }
+
+    // A pattern whose only match is a far off empty one ($ here) mustn't go looking for it again from every position in between
+    @Test(timeout = 10000)
+    public void testRegexEmptyMatchFarAhead(){
+        String record = "y".repeat(200000);
+        assertEquals(List.of(record), split(";|$", record));
+        assertEquals(List.of(record, "z"), split(";|$", record + ";z"));
+    }
+
+    // Every splitter has to agree with itself whether the fields get built or skipped over
+    @Test
+    public void testSkip(){
+        String record = ",a  b,,c d,";
+        for(String separator : new String[]{" ", ",", ",,", "[, ]"}){
+            List<String> all = split(separator, record);
+            for(int skipped = 0; skipped <= all.size(); skipped++){
+                FieldSplitter splitter = FieldSplitter.compile(separator);
+                splitter.reset(record);
+                for(int i = 0; i < skipped; i++)
+                    assertTrue(splitter.skip());
+                List<String> rest = new ArrayList<>();
+                CharSequence field;
+                while((field = splitter.next()) != null)
+                    rest.add(field.toString());
+                assertEquals("FS \"%s\", %d skipped".formatted(separator, skipped), all.subList(skipped, all.size()), rest);
+                assertFalse(splitter.skip());
+            }
+        }
+    }
+
+    @Test
+    public void testReuse(){
+        FieldSplitter splitter = FieldSplitter.compile("[,;]");
+        assertEquals(List.of("a", "b"), split(splitter, "a,b"));
+        assertEquals(List.of("c", "d", "e"), split(splitter, "c;d,e"));
+        assertEquals(List.of(), split(splitter, ""));
+    }
+
+    @Test
+    public void testFixedWidth(){
+        FieldSplitter splitter = new FieldSplitter.FixedWidth("4 2 3");
+        assertEquals(List.of("2024", "01", "abc"), split(splitter, "202401abc"));
+        assertEquals(List.of("2024", "01", "abc"), split(splitter, "202401abcdef")); // Anything past the last width is dropped
+        assertEquals(List.of("2024", "01", "a"), split(splitter, "202401a")); // Short records cut the field they end in short
+        assertEquals(List.of("2024", "0"), split(splitter, "20240")); // and fields starting past the end don't exist
+        assertEquals(List.of(), split(splitter, ""));
+
+        // skip:width jumps over filler columns, * takes the rest of the record
+        splitter = new FieldSplitter.FixedWidth(" 2  3:2\t* ");
+        assertEquals(List.of("ab", "fg", "hijk"), split(splitter, "abcdefghijk"));
+        assertEquals(List.of("ab", "fg"), split(splitter, "abcdefg"));
+
+        splitter = new FieldSplitter.FixedWidth("0 2");
+        assertEquals(List.of("", "ab"), split(splitter, "abc")); // Zero width fields are allowed, they're just empty
+
+        // Skipping lands in the same place
+        splitter = new FieldSplitter.FixedWidth("1 2 3");
+        splitter.reset("abcdef");
+        assertTrue(splitter.skip());
+        assertTrue(splitter.skip());
+        assertEquals("def", splitter.next().toString());
+        assertFalse(splitter.skip());
+    }
+
+    @Test
+    public void testFixedWidthErrors(){
+        for(String widths : new String[]{"2 * 3", "2 x", "-1", "-3:2", "2:", ":2", ""})
+            assertThrows(widths, IllegalArgumentException.class, () -> new FieldSplitter.FixedWidth(widths));
+    }
+}
@@ -1,4 +1,6 @@
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -8,109 +10,377 @@ import java.util.regex.Pattern;
 
 public class Interpreter {
     private static class LineManager{
-        private LinkedList<String> lines;
+        private RecordSource source;
+        private CharSequence record = ""; // Current $0, might just be a view over the input
+        private InterpreterDataType recordData; // $0 as a value, only built once somebody actually asks for it
+        private boolean recordDirty; // A field (or NF) was assigned, so $0 has to be rebuilt from the fields before it's read again
+        private String compiledSeparator; // The FS (or FIELDWIDTHS/JSONFIELDS) value separatorSplitter was compiled from
+        private String compiledMode; // Which of those it was
+        private FieldSplitter separatorSplitter;
+        private final boolean csv; // CSV input, fields come from CsvFieldSplitter instead of FS
+        private String compiledRecordSeparator = "\n"; // The RS value the source is currently splitting on
         
-        public LineManager(List<String> lines){
-            globalVariables.put("NR", new InterpreterDataType("0"));
-            globalVariables.put("FNR", new InterpreterDataType("0"));
-            if(lines.isEmpty())
-                this.lines = new LinkedList<>(List.of(""));
-            else
-                this.lines = new LinkedList<>(lines);
+        // Fields of the current record, fields[i] is $i (slot 0 goes unused, $0 is the record itself).
+        // The same array is reused for every record and only grows when a record has more fields than we've seen yet.
+        private InterpreterDataType[] fields = new InterpreterDataType[16];
+        
+        // Lazy field splitting state for the current record
+        private FieldSplitter recordSplitter; // Compiled from FS as it was when this record was read
+        private FieldProjection projection = FieldProjection.ALL; // Which fields the program can actually reference
+        private int fieldsSplit; // How many fields have been pulled out so far
+        private boolean fullySplit;
+        private int fieldCount; // NF, only valid once fullySplit
+        
+        // NR, FNR and NF are plain numbers, they only get turned into IDTs when a script actually reads them
+        private long recordNumber; // NR
+        private long fileRecordNumber; // FNR
+        private InterpreterDataType recordNumberData, fileRecordNumberData, fieldCountData;
+        
+        public LineManager(RecordSource source, boolean csv){
+            this.source = source;
+            this.csv = csv;
+        }
+        
+        public LineManager(RecordSource source){
+            this(source, false);
         }
         
-        public void switchFile(List<String> newLines){
-            this.lines = new LinkedList<>(newLines);
-            globalVariables.put("FNR", new InterpreterDataType("0")); // Reset FNR
-            if(!handleNextLine())
-                splitAndAssign("");
+        // Called when the input moves on to a new file
+        public void startFile(){
+            fileRecordNumber = 0; // Reset FNR
+            fileRecordNumberData = null;
         }
         
         // This splits & assigns the next line, progresses the line manager
         public boolean handleNextLine(){
-            if(lines.isEmpty())
+            CharSequence next = getNext();
+            if(next == null)
                 return false;
-            return splitAndAssign(getNext());
+            return splitAndAssign(next);
         }
         
-        // This splits & assigns any given line, does not progress the line manager on its own
-        public boolean splitAndAssign(String line){
-            globalVariables.put("$0", new InterpreterDataType(line));
-            String separator = globalVariables.get("FS").value;
-            String[] split = line.split(separator);
-            
-            int i = 1;
-            for(String s : split){
-                globalVariables.put("$"+ i++, new InterpreterDataType(s));
-            }
-            // NF = i - 1 (Number of fields)
-            globalVariables.put("NF", new InterpreterDataType(Integer.toString(i - 1)));
+        // This assigns any given line, does not progress the line manager on its own.
+        // Nothing gets split here, fields are only pulled out once something asks for $n or NF (see splitUpTo)
+        public boolean splitAndAssign(CharSequence line){
+            record = line;
+            recordData = null;
+            recordDirty = false;
+            fieldCountData = null;
+            recordSplitter = separatorSplitter(); // FS changes only apply from the next record on, so grab it now
+            recordSplitter.reset(line);
+            fieldsSplit = 0;
+            fullySplit = false;
             return true;
         }
-        public boolean editField(int index, String newValue){
+        
+        public InterpreterDataType getRecord(){
+            if(recordDirty)
+                rebuildRecord();
+            if(recordData == null)
+                recordData = InterpreterDataType.strnum(record); // Stays a view until something needs it as a String
+            return recordData;
+        }
+        
+        public InterpreterDataType getField(int index){
+            if(index == 0)
+                return getRecord();
+            splitUpTo(index);
+            if(index > fieldsSplit || (fullySplit && index > fieldCount))
+                return InterpreterDataType.UNINITIALIZED; // Fields past the end of the record were never set, so $5 == 0 and $5 == "" are both true
+            if(fields[index] == null){
+                // Skipped by the projection, which should be impossible. Give up on skipping and split this record again
+                projection = FieldProjection.ALL;
+                recordSplitter.reset(record);
+                fieldsSplit = 0;
+                fullySplit = false;
+                return getField(index);
+            }
+            return fields[index];
+        }
+        
+        // NF needs every field, so this is the one thing that forces a full split
+        public int countFields(){
+            splitUpTo(Integer.MAX_VALUE);
+            return fieldCount;
+        }
+        
+        // Splits the record just far enough to have the first n fields (or all of them, if there are fewer)
+        private void splitUpTo(int n){
+            CharSequence field;
+            int index;
+            while(fieldsSplit < n && !fullySplit){
+                index = fieldsSplit + 1;
+                try {
+                    if(projection.needs(index)){
+                        if((field = recordSplitter.next()) != null)
+                            setField(index, InterpreterDataType.strnum(field));
+                    } else if(recordSplitter.skip()){
+                        field = "";
+                        setField(index, null); // The program never looks at this field, so don't bother building it
+                    } else
+                        field = null;
+                } catch(IllegalArgumentException e){
+                    // Splitters that parse the record (JSON lines) complain about bad records this way
+                    throw new AwkIllegalArgumentException("Can't split record %d: %s".formatted(recordNumber, e.getMessage()));
+                }
+                
+                if(field == null){
+                    fieldCount = fieldsSplit;
+                    fullySplit = true;
+                    break;
+                }
+                fieldsSplit = index;
+            }
+        }
+        
+        public void setProjection(FieldProjection projection){
+            this.projection = projection;
+        }
+        
+        // RS works like FS, a change applies from the next record read on
+        private void updateRecordSeparator(){
+            String separator = globalVariables.get("RS").getValue();
+            if(separator.equals(compiledRecordSeparator))
+                return;
+            try {
+                source.setRecordSeparator(RecordSeparator.compile(separator));
+            } catch(IllegalArgumentException | UnsupportedOperationException e){
+                throw new AwkIllegalArgumentException("Invalid RS \"%s\": %s".formatted(separator, e.getMessage()));
+            } catch(UncheckedIOException e){
+                throw new AwkInterpreterException("Could not apply RS \"%s\"".formatted(separator), e.getCause());
+            }
+            compiledRecordSeparator = separator;
+        }
+        
+        // Only recompile when the variable the splitter comes from actually changed.
+        // A non-empty FIELDWIDTHS wins over everything, then a non-empty JSONFIELDS, then --csv, then FS.
+        // Set them back to "" to go back to splitting on FS.
+        private FieldSplitter separatorSplitter(){
+            String mode;
+            String separator;
+            InterpreterDataType widths = globalVariables.get("FIELDWIDTHS");
+            InterpreterDataType jsonFields = globalVariables.get("JSONFIELDS");
+            if(widths != null && !widths.getValue().isBlank()){
+                mode = "FIELDWIDTHS";
+                separator = widths.getValue();
+            } else if(jsonFields != null && !jsonFields.getValue().isBlank()){
+                mode = "JSONFIELDS";
+                separator = jsonFields.getValue();
+            } else if(csv){
+                mode = "CSV";
+                separator = ""; // FS doesn't matter for CSV
+            } else {
+                mode = "FS";
+                separator = globalVariables.get("FS").getValue();
+                if(compiledRecordSeparator.isEmpty() && !separator.equals(" "))
+                    // In paragraph mode newlines always separate fields too, whatever FS is (" " already covers them)
+                    separator = "%s|\n".formatted(separator.length() == 1 ? Pattern.quote(separator) : "(?:" + separator + ")");
+            }
+            if(!mode.equals(compiledMode) || !separator.equals(compiledSeparator)){
+                try {
+                    separatorSplitter = switch(mode){
+                        case "FIELDWIDTHS" -> new FieldSplitter.FixedWidth(separator);
+                        case "JSONFIELDS" -> new JsonFieldSplitter(separator);
+                        case "CSV" -> new CsvFieldSplitter();
+                        default -> FieldSplitter.compile(separator);
+                    };
+                } catch(IllegalArgumentException e){
+                    throw new AwkIllegalArgumentException("Invalid %s \"%s\": %s".formatted(mode, separator, e.getMessage()));
+                }
+                compiledSeparator = separator;
+                compiledMode = mode;
+            }
+            return separatorSplitter;
+        }
+        // The field takes on the value as it is, so $3 = $3 * 2 is still a number and not the string it would print as
+        public boolean editField(int index, InterpreterDataType newValue){
             
             if(index == 0){ // Replace whole line
-                splitAndAssign(newValue);
+                splitAndAssign(newValue.getText());
                 return true;
             }
             
-            if(!globalVariables.containsKey("NF") || Double.parseDouble(globalVariables.get("NF").value) < index)
-            // Fail if we haven't assigned fields yet, or if we're trying to edit a field that doesn't exist
+            if(index < 0)
                 return false;
             
-            globalVariables.put("$" + index, new InterpreterDataType(newValue));
+            if(index > countFields())
+                setFieldCount(index); // Assigning past the end grows the record, the gap gets filled with unset fields
+            
+            setField(index, newValue);
+            markDirty();
             return true;
         }
         
-        protected String getNext(){
-            // NR++ (Number of records)
-            globalVariables.put("NR", new InterpreterDataType(Integer.toString(Integer.parseInt(globalVariables.get("NR").value) + 1)));
-            // FNR ++ (File Number of Records)
-            globalVariables.put("FNR", new InterpreterDataType(Integer.toString(Integer.parseInt(globalVariables.get("FNR").value) + 1)));
-            return this.lines.remove(0);
+        // Returns NR, FNR or NF if that's what name is, null for any other variable.
+        // They're handed out as numbers, the string form only gets made if a script prints or concatenates one
+        public InterpreterDataType getCounter(String name){
+            switch(name){
+                case "NR" -> {
+                    if(recordNumberData == null)
+                        recordNumberData = new InterpreterDataType((double) recordNumber);
+                    return recordNumberData;
+                }
+                case "FNR" -> {
+                    if(fileRecordNumberData == null)
+                        fileRecordNumberData = new InterpreterDataType((double) fileRecordNumber);
+                    return fileRecordNumberData;
+                }
+                case "NF" -> {
+                    if(fieldCountData == null)
+                        fieldCountData = new InterpreterDataType((double) countFields());
+                    return fieldCountData;
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        
+        // Assigns NR, FNR or NF, returns false if name isn't one of them
+        public boolean setCounter(String name, InterpreterDataType value){
+            switch(name){
+                case "NR" -> {
+                    recordNumber = parseCount(name, value);
+                    recordNumberData = null;
+                }
+                case "FNR" -> {
+                    fileRecordNumber = parseCount(name, value);
+                    fileRecordNumberData = null;
+                }
+                case "NF" -> setFieldCount((int) parseCount(name, value));
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private static long parseCount(String name, InterpreterDataType value){
+            long count = (long) value.getNumber();
+            if(count < 0)
+                throw new AwkIllegalArgumentException("%s cannot be negative".formatted(name));
+            return count;
+        }
+        
+        // Assigning NF, cuts fields off the end or pads it out with unset ones
+        public void setFieldCount(int count){
+            splitUpTo(Integer.MAX_VALUE); // Everything has to be split before we can rebuild $0 out of it later
+            for(int i = fieldCount + 1; i <= count; i++)
+                setField(i, InterpreterDataType.UNINITIALIZED);
+            fieldCount = count;
+            fieldsSplit = count;
+            fieldCountData = null;
+            markDirty();
+        }
+        
+        private void markDirty(){
+            recordDirty = true;
+            recordData = null;
+        }
+        
+        // Joins the fields back together with OFS, only happens once per batch of edits and only if $0 is actually used
+        private void rebuildRecord(){
+            String separator = globalVariables.get("OFS").getValue();
+            int length = separator.length() * Math.max(fieldCount - 1, 0);
+            for(int i = 1; i <= fieldCount; i++)
+                length += fields[i].getValue().length();
+            
+            StringBuilder rebuilt = new StringBuilder(length); // Sized up front so it never has to grow
+            for(int i = 1; i <= fieldCount; i++){
+                if(i > 1)
+                    rebuilt.append(separator);
+                rebuilt.append(fields[i].getValue());
+            }
+            
+            String rebuiltRecord = rebuilt.toString();
+            record = rebuiltRecord;
+            recordData = InterpreterDataType.strnum(rebuiltRecord);
+            recordDirty = false;
+        }
+        
+        private void setField(int index, InterpreterDataType value){
+            if(index >= fields.length)
+                fields = Arrays.copyOf(fields, Math.max(fields.length * 2, index + 1));
+            fields[index] = value;
+        }
+        
+        // Pulls the next record from the source and counts it, or returns null if there are none left
+        protected CharSequence getNext(){
+            updateRecordSeparator();
+            CharSequence next;
+            try {
+                next = source.nextRecord();
+            } catch (IOException e){
+                throw new AwkInterpreterException("Could not read next record", e);
+            }
+            if(next == null)
+                return null;
+            recordNumber++; // NR++ (Number of records)
+            fileRecordNumber++; // FNR++ (File Number of Records)
+            recordNumberData = null;
+            fileRecordNumberData = null;
+            return next;
+        }
+        
+        public void close(){
+            try {
+                source.close();
+            } catch (IOException e){
+                throw new AwkInterpreterException("Could not close input", e);
+            }
         }
         
     }
     
     private static HashMap<String, InterpreterDataType> globalVariables = new HashMap<>();
+    private static long arrayBudget = -1; // ARRAYMEM in bytes, see updateArrayBudget
+    private static final Set<String> NUMERIC_BUILTINS = Set.of("length", "index", "match", "getline"); // See evaluateBuiltIn
+    private StringBuilder subscriptBuilder = new StringBuilder(); // See evaluateSubscript
     private HashMap<String, FunctionDefinitionNode> functions = new HashMap<>();
 
     private LineManager lineManager;
     private ProgramNode program;
-    private String[] knownArgs = {"FS", "OFMT", "OFS"};
+    private boolean memoryMapped = false; // Map input files instead of streaming them
+    private final LinkedHashMap<String, Path> persistent = new LinkedHashMap<>(); // PERSIST arrays and their files
+    private boolean csv = false; // Input is CSV, records can span lines and fields are split by CsvFieldSplitter
 
     
-    public Interpreter(ProgramNode program, Path fileArg, HashMap<String, String> otherArgs) throws IOException {
-        initGlobals(otherArgs);
-        System.out.printf("New interpreter with argument \"%s\" created, globals cleared\n", fileArg);
+    // All the files are read as one stream of records, so BEGIN and END only run once for the whole list
+    public Interpreter(ProgramNode program, List<Path> fileArgs, HashMap<String, String> otherArgs, boolean memoryMapped, boolean csv){
+        this.memoryMapped = memoryMapped;
+        this.csv = csv;
         globalVariables = new HashMap<>();
-        if(fileArg != null)
-            globalVariables.put("FILENAME", new InterpreterDataType(fileArg.toString()));
-        else 
-            globalVariables.put("FILENAME", new InterpreterDataType(""));
+        globalVariables.put("FILENAME", InterpreterDataType.EMPTY); // Set once the first file is actually opened
+        initGlobals(otherArgs);
         setDefaults();
-        if(fileArg != null)
-            lineManager = new LineManager(Files.readAllLines(fileArg));
-        else
-            lineManager = new LineManager(List.of());
+        lineManager = new LineManager(new ChainedRecordSource(fileArgs, this::openInput, this::startFile), csv);
         this.program = program;
 
     }
     
-    public Interpreter(ProgramNode program, Path fileArg) throws IOException {
+    public Interpreter(ProgramNode program, Path fileArg, HashMap<String, String> otherArgs){
+        this(program, fileArg == null ? List.of() : List.of(fileArg), otherArgs, false, false);
+    }
+    
+    public Interpreter(ProgramNode program, Path fileArg){
         this(program, fileArg, new HashMap<>());
     }
 
-    public Interpreter(ProgramNode program, HashMap<String, String> awkArgs){
-        initGlobals(awkArgs);
-        System.out.println("New interpreter created, globals cleared");
+    public Interpreter(ProgramNode program, HashMap<String, String> awkArgs, boolean csv){
+        this.csv = csv;
         globalVariables = new HashMap<>();
-        globalVariables.put("FILENAME", new InterpreterDataType(""));
+        globalVariables.put("FILENAME", InterpreterDataType.EMPTY);
+        initGlobals(awkArgs);
         setDefaults();
-        lineManager = new LineManager(List.of());
+        // No files, so read from stdin like any other awk. Only once there's something that reads it though
+        lineManager = new LineManager(RecordSource.lazily(() -> csv ? new CsvRecordSource(StreamRecordSource.stdin()) : StreamRecordSource.stdin()), csv);
         this.program = program;
     }
     
+    public Interpreter(ProgramNode program, HashMap<String, String> awkArgs){
+        this(program, awkArgs, false);
+    }
+    
     public Interpreter(ProgramNode program){
         this(program, new HashMap<>());
     }
@@ -120,14 +390,14 @@ public class Interpreter {
         globalVariables = new HashMap<>();
         globalVariables.put("FILENAME", new InterpreterDataType("STDIN"));
         setDefaults();
-        this.lineManager = new LineManager(debugLines);
+        this.lineManager = new LineManager(RecordSource.of(debugLines));
     }
     
+    // Variables given on the command line (-F, -v), has to run after globalVariables is reset or they just get thrown away.
+    // They're input as far as AWK is concerned, so -v limit=10 compares as a number
     private void initGlobals(HashMap<String, String> awkArgs){
-        for(String arg : knownArgs){
-            if(awkArgs.containsKey(arg))
-                globalVariables.put(arg, new InterpreterDataType(awkArgs.get(arg)));
-        }
+        for(Map.Entry<String, String> arg : awkArgs.entrySet())
+            globalVariables.put(arg.getKey(), InterpreterDataType.strnum(arg.getValue()));
     }
     
     // TODO: Change from public once full functionality is implemented
@@ -138,32 +408,97 @@ public class Interpreter {
     
     private void setDefaults(){
         globalVariables.putIfAbsent("FS", new InterpreterDataType(" "));
+        globalVariables.putIfAbsent("CONVFMT", new InterpreterDataType("%.6g"));
         globalVariables.putIfAbsent("OFMT", new InterpreterDataType("%.6g"));
-        globalVariables.putIfAbsent("OFS", new InterpreterDataType("\n"));
+        globalVariables.putIfAbsent("OFS", new InterpreterDataType(" "));
+        globalVariables.putIfAbsent("RS", new InterpreterDataType("\n"));
+        globalVariables.putIfAbsent("SUBSEP", new InterpreterDataType("\034"));
+        updateArrayBudget();
         populateKnownFunctions();
+        attachPersistentArrays();
+    }
+
+    // -v PERSIST=name:path[,name:path...] makes those arrays persistent: read from the file the first time they're used
+    // and written back after END (see ArrayFile), so a run can add onto whatever the last one left
+    private void attachPersistentArrays(){
+        InterpreterDataType persist = globalVariables.get("PERSIST");
+        if(persist == null || persist.getValue().isEmpty())
+            return;
+        for(String entry : persist.getValue().split(",")){
+            int colon = entry.indexOf(':');
+            String name = colon == -1 ? "" : entry.substring(0, colon).trim();
+            if(!name.matches("[A-Za-z_][A-Za-z0-9_]*") || entry.substring(colon + 1).isBlank())
+                throw new AwkIllegalArgumentException("PERSIST takes name:path pairs separated by commas, got \"%s\"".formatted(entry));
+            Path file = Path.of(entry.substring(colon + 1).trim());
+            InterpreterArrayDataType array = new InterpreterArrayDataType();
+            array.loadLazily(file, e -> new AwkInterpreterException("Could not load PERSIST array %s from %s".formatted(name, file), e));
+            globalVariables.put(name, array);
+            persistent.put(name, file);
+        }
+    }
+
+    // Arrays that were never touched still match their files, so only the ones that were get written
+    private void savePersistentArrays(){
+        for(Map.Entry<String, Path> entry : persistent.entrySet()){
+            if(!(globalVariables.get(entry.getKey()) instanceof InterpreterArrayDataType array) || !array.isLoaded())
+                continue;
+            try {
+                ArrayFile.write(entry.getValue(), array);
+            } catch(IOException e){
+                throw new AwkInterpreterException("Could not save array %s to %s".formatted(entry.getKey(), entry.getValue()), e);
+            }
+        }
     }
     
-    public void changeFile(Path path) throws IOException {
-        lineManager.switchFile(Files.readAllLines(path));
+    private RecordSource openInput(Path path) throws IOException {
+        Codec codec = Codec.forPath(path);
+        // Mapped files can only be split into lines, any other RS falls back to streaming
+        boolean mapped = memoryMapped && globalVariables.get("RS").getValue().equals("\n");
+        RecordSource source;
+        if(codec != null){
+        // Compressed, gets decoded on its own thread while we work through what's already been decoded
+            InputStream compressed = Files.newInputStream(path);
+            try {
+                source = new StreamRecordSource(new PipelinedInputStream(codec.decode(compressed), path.toString()));
+            } catch(IOException e){
+                compressed.close(); // Not actually compressed, most likely
+                throw e;
+            }
+        } else
+            source = mapped ? new MappedRecordSource(path) : new StreamRecordSource(path);
+        return csv ? new CsvRecordSource(source) : source;
+    }
+    
+    private void startFile(Path path){
+        globalVariables.put("FILENAME", new InterpreterDataType(path.toString()));
+        lineManager.startFile();
     }
     
     public void interpretProgram(){
         
         for(FunctionDefinitionNode func: program.getFunctions())
             functions.put(func.getName(), func);
+        lineManager.setProjection(FieldProjection.analyze(program));
         
         for(BlockNode block: program.getBegin())
             evaluateBlock(block, null).rejectLoopControl("Cannot use break or continue outside of a loop, in BEGIN block");
-        lineManager.handleNextLine();
-
-        do
-            for(BlockNode block: program.getOther())
-                evaluateBlock(block, null).rejectLoopControl("Cannot use break or continue outside of a loop, in \"other\" block");
-        while(lineManager.handleNextLine());
         
-        for(BlockNode block: program.getEnd())
-            evaluateBlock(block, null).rejectLoopControl("Cannot use break or continue outside of a loop, in END block");
+        // Nothing but BEGIN, so there's nothing to read input for. Like POSIX awk, we're done without waiting on stdin
+        if(!program.getOther().isEmpty() || !program.getEnd().isEmpty()){
+            if(!lineManager.handleNextLine())
+                lineManager.splitAndAssign(""); // Empty input still gets a single pass with a blank line
+
+            do
+                for(BlockNode block: program.getOther())
+                    evaluateBlock(block, null).rejectLoopControl("Cannot use break or continue outside of a loop, in \"other\" block");
+            while(lineManager.handleNextLine());
+            
+            for(BlockNode block: program.getEnd())
+                evaluateBlock(block, null).rejectLoopControl("Cannot use break or continue outside of a loop, in END block");
+        }
         
+        savePersistentArrays();
+        lineManager.close();
     }
     
     public ReturnType evaluateStatement(StatementNode statement, HashMap<String,InterpreterDataType> locals){
@@ -209,12 +544,12 @@ public class Interpreter {
         Collection<Node> indices = delete.indices;
 
         if(target instanceof InterpreterArrayDataType array){
-            HashMap<String, InterpreterDataType> arrayData = array.getArrayValue();
+            if(indices.isEmpty())
+                array.clear();
             for(Node index : indices){
-                InterpreterDataType indexData = getIDT(index, locals);
-                if(!arrayData.containsKey(indexData.value))
-                    throw new AwkIndexOutOfBoundsException(String.format("Index %s out of bounds for array %s, by %s", indexData.value, delete.target, delete.reportPosition()));
-                arrayData.remove(indexData.value);
+                InterpreterDataType indexData = evaluateSubscript(index, locals);
+                if(!array.remove(indexData))
+                    throw new AwkIndexOutOfBoundsException(String.format("Index %s out of bounds for array %s, by %s", indexData.getValue(), delete.target, delete.reportPosition()));
             }
         } else
             throw new AwkIllegalArgumentException("Cannot delete from non-array variable, by %s".formatted(delete.reportPosition()));
@@ -223,13 +558,13 @@ public class Interpreter {
     }
 
     private ReturnType evaluateReturn(ASTnode.ReturnNode returnNode, HashMap<String, InterpreterDataType> locals){
-        return new ReturnType(getIDT(returnNode.value, locals).value, returnNode.reportPosition());
+        return new ReturnType(getIDT(returnNode.value, locals), true, returnNode.reportPosition());
     }
     
     private ReturnType evaluateIf(ASTnode.IfNode ifNode, HashMap<String, InterpreterDataType> locals){
         InterpreterDataType condition = getIDT(ifNode.getCondition(), locals);
         Optional<ASTnode.IfNode> elseNode;
-        boolean trueCase = asBoolean(condition.value);
+        boolean trueCase = asBoolean(condition);
         
         if(trueCase)
             return evaluateBlock(ifNode.getStatements(), locals);
@@ -253,7 +588,7 @@ public class Interpreter {
         BlockNode block = forNode.getStatements();
 
         ReturnType result;
-        while(asBoolean((conditionData = getIDT(condition, locals)).value)) /*for(;_;)*/ {
+        while(asBoolean(conditionData = getIDT(condition, locals))) /*for(;_;)*/ {
 
             if((result = evaluateBlock(block, locals)).controlType == ReturnType.Control.BREAK)
                 break;
@@ -279,8 +614,8 @@ public class Interpreter {
         HashMap<String, InterpreterDataType> scope = (locals == null) ? globalVariables : locals;
         ReturnType result;
 
-        for(Map.Entry<String, InterpreterDataType> entry : array.getArrayValue().entrySet()){
-            scope.put(memberName, entry.getValue());
+        for(InterpreterDataType element : array.values()){
+            scope.put(memberName, element);
 
             if((result = evaluateBlock(block, locals)).controlType == ReturnType.Control.BREAK)
                 break;
@@ -303,7 +638,7 @@ public class Interpreter {
             else if(result.controlType == ReturnType.Control.RETURN)
                 return result;
             condition = getIDT(whileNode.getCondition(), locals);
-            trueCase = asBoolean(condition.value);
+            trueCase = asBoolean(condition);
         } while(trueCase);
 
         return new ReturnType(ReturnType.Control.NORMAL, whileNode.reportPosition());
@@ -313,7 +648,7 @@ public class Interpreter {
         if(whileNode.doWhile)
             return evaluateDoWhile(whileNode, locals);
         InterpreterDataType condition = getIDT(whileNode.getCondition(), locals);
-        boolean trueCase = asBoolean(condition.value);
+        boolean trueCase = asBoolean(condition);
         BlockNode block = whileNode.getStatements();
         ReturnType result;
 
@@ -323,7 +658,7 @@ public class Interpreter {
             else if(result.controlType == ReturnType.Control.RETURN)
                 return result;
             condition = getIDT(whileNode.getCondition(), locals);
-            trueCase = asBoolean(condition.value);
+            trueCase = asBoolean(condition);
         }
 
         return new ReturnType(ReturnType.Control.NORMAL, whileNode.reportPosition());
@@ -341,7 +676,7 @@ public class Interpreter {
             else
                 conditionData = getIDT(condition.get(), locals);
 
-            shouldRun = asBoolean(conditionData.value);
+            shouldRun = asBoolean(conditionData);
         }
 
         if(shouldRun)
@@ -395,17 +730,17 @@ public class Interpreter {
         if (arguments.size() < parameterNames.size())
             throw new AwkIllegalArgumentException("Too few arguments for %s, by %s".formatted(funcName, call.reportPosition()));
 
-        HashMap<String, InterpreterDataType> array = new HashMap<>(); // This and i are for variadic arguments
+        InterpreterArrayDataType array = new InterpreterArrayDataType(); // This and i are for variadic arguments
         int i = 1;
         for (Node arg : arguments)
             if (paramNameIterator.hasNext())
-                args.put(paramNameIterator.next(), getIDT(arg, locals));
+                args.put(paramNameIterator.next(), getIDT(arg, locals).detached());
             else
             // Variadic arguments
-                array.put(Integer.toString(i++), getIDT(arg, locals));
+                array.put(new InterpreterDataType(i++), getIDT(arg, locals));
             
-        if(!array.isEmpty())    
-            args.put(funcName, new InterpreterArrayDataType(array)); // Creates an array with the functions name holding all the variadic arguments. AWK is weird.
+        if(array.size() != 0)
+            args.put(funcName, array); // Creates an array with the functions name holding all the variadic arguments. AWK is weird.
         return args;
     }
     
@@ -442,7 +777,7 @@ public class Interpreter {
                     try {
                         args.put(parameter, evaluateVariableRef(variableRef, scope));
                     } catch (AwkInterpreterException ignored) {
-                        args.put(parameter, new InterpreterDataType(""));
+                        args.put(parameter, InterpreterDataType.EMPTY);
                         // TODO: see if the empty string breaks anything
                     }
                 } else {
@@ -476,6 +811,9 @@ public class Interpreter {
         for (String variableName : varToParam.keySet())
             scope.put(variableName, args.get(varToParam.get(variableName)));
 
+        // Built-ins hand back strings, but the ones that are numbers in AWK have to compare (and test true or false) like numbers
+        if(NUMERIC_BUILTINS.contains(builtIn.getName()))
+            return new ReturnType(new InterpreterDataType(NumericString.valueOf(output)), true, call.reportPosition());
         return new ReturnType(output, call.reportPosition());
     }
     public InterpreterDataType getIDT(Node node, HashMap<String, InterpreterDataType> locals){
@@ -503,13 +841,15 @@ public class Interpreter {
     
     private InterpreterDataType evaluateTernary(TernaryNode node, HashMap<String, InterpreterDataType> scope){
         InterpreterDataType condition = getIDT(node.getCondition(), scope);
-        if(asBoolean(condition.value))
+        if(asBoolean(condition))
             return getIDT(node.getTrueCase(), scope);
         else
             return getIDT(node.getFalseCase(), scope);
     }
     
     private InterpreterDataType evaluateOperation(OperationNode operation, HashMap<String, InterpreterDataType> scope){
+        if(operation.isOp(OperationNode.Operation.IN))
+            return evaluateMembership(operation, scope);
         Node left = operation.getLeft();
         Optional<Node> right = Optional.empty();
         if((right = operation.getRight()).isPresent())
@@ -529,48 +869,22 @@ public class Interpreter {
         // Single operand operations, if no right is present it never escapes from here
             switch(operation.getOperation()){
                 case NOT -> {
-                    if(asBoolean(leftData.value))
-                        return new InterpreterDataType("0");
+                    if(asBoolean(leftData))
+                        return InterpreterDataType.FALSE;
                     else
-                        return new InterpreterDataType("1");
+                        return InterpreterDataType.TRUE;
                 }
                 case UNARYNEG -> {
-                    try{
-                        return new InterpreterDataType(Double.toString(-Double.parseDouble(leftData.value)));
-                    } catch (NumberFormatException e){
-                        throw new AwkIllegalArgumentException("UNARYNEG operator requires numeric operand");
-                    }
+                    return new InterpreterDataType(-leftData.getNumber());
                 }
-                case UNARYPOS -> { // TODO: maybe make this less like eating glass
-                    try{
-                        return new InterpreterDataType(Double.toString(Double.parseDouble(leftData.value)));
-                    } catch (NumberFormatException maybeNumberFollowedByCharacters){
-                        String extractedNumber = leftData.value.strip();
-                        // Repeatedly trim off the last character and return the first number we get.
-                        while(!extractedNumber.isEmpty()){
-                            try{
-                                return new InterpreterDataType(Double.toString(Double.parseDouble(extractedNumber)));
-                            } catch (NumberFormatException e){
-                                extractedNumber = extractedNumber.substring(0, extractedNumber.length() - 1);
-                            }
-                        }
-                        // No number at all
-                        return new InterpreterDataType("0");
-                    }
+                case UNARYPOS -> { // A number followed by characters is just the number, no number at all is 0
+                    return new InterpreterDataType(leftData.getNumber());
                 }
                 case POSTINCREMENT, PREINCREMENT -> {
-                    try{
-                        return new InterpreterDataType(Double.toString(Double.parseDouble(leftData.value) + 1));
-                    } catch (NumberFormatException e){
-                        throw new AwkIllegalArgumentException("INCREMENT operator requires numeric operand");
-                    }
+                    return new InterpreterDataType(leftData.getNumber() + 1);
                 }
                 case POSTDECREMENT, PREDECREMENT -> {
-                    try{
-                        return new InterpreterDataType(Double.toString(Double.parseDouble(leftData.value) - 1));
-                    } catch (NumberFormatException e){
-                        throw new AwkIllegalArgumentException("DECREMENT operator requires numeric operand");
-                    }
+                    return new InterpreterDataType(leftData.getNumber() - 1);
                 }
                 default -> {
                     throw new RuntimeException("Unrecognized single operand operation");
@@ -582,173 +896,79 @@ public class Interpreter {
         
         if(rightData == null) // Safety check
             throw new RuntimeException("Right data ended up null while evaluating operation, this should be impossible");
-        Double leftDouble, rightDouble;
-        
-        // Get doubles if possible
-        try {
-            leftDouble = Double.parseDouble(leftData.value);
-            rightDouble = Double.parseDouble(rightData.value);
-        } catch (NumberFormatException e){
-            leftDouble = null;
-            rightDouble = null;
-        }
-        
-        // Get boolean interpretation (we already have the doubles stored here, so forget the helper functions)
-        Boolean leftBool = null, rightBool = null;
-        try {
-            leftBool = asBoolean(leftData.value);
-            rightBool = asBoolean(rightData.value);
-        } catch (IncompatibleTypeException e){
-            leftBool = null;
-            rightBool = null; // Just ensure both are null, so we only have to check one
-        }
+        // Comparisons are numeric if both sides are (or look like) numbers, and by string otherwise.
+        // Arithmetic always works on numbers, strings convert the AWK way. The values cache their numbers so this only ever scans once
+        boolean numeric = leftData.isNumeric() && rightData.isNumeric();
+        double leftDouble = leftData.getNumber();
+        double rightDouble = rightData.getNumber();
         
         switch(operation.getOperation()){
             case EQUAL -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(booleanAsString(leftDouble.equals(rightDouble)));
-                return new InterpreterDataType(booleanAsString(leftData.value.equals(rightData.value)));
+                if(numeric)
+                    return InterpreterDataType.of(leftDouble == rightDouble);
+                return InterpreterDataType.of(leftData.getValue().equals(rightData.getValue()));
             }
             case NOTEQUAL -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(booleanAsString(!leftDouble.equals(rightDouble)));
-                return new InterpreterDataType(booleanAsString(!leftData.value.equals(rightData.value)));
+                if(numeric)
+                    return InterpreterDataType.of(leftDouble != rightDouble);
+                return InterpreterDataType.of(!leftData.getValue().equals(rightData.getValue()));
             }
             case LESSTHAN -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(booleanAsString(leftDouble < rightDouble));
+                if(numeric)
+                    return InterpreterDataType.of(leftDouble < rightDouble);
                 else 
-                    return new InterpreterDataType(booleanAsString(leftData.value.compareTo(rightData.value) < 0));
+                    return InterpreterDataType.of(leftData.getValue().compareTo(rightData.getValue()) < 0);
             }
             case LESSOREQUAL -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(booleanAsString(leftDouble <= rightDouble));
+                if(numeric)
+                    return InterpreterDataType.of(leftDouble <= rightDouble);
                 else 
-                    return new InterpreterDataType(booleanAsString(leftData.value.compareTo(rightData.value) <= 0));
+                    return InterpreterDataType.of(leftData.getValue().compareTo(rightData.getValue()) <= 0);
             }
             case GREATERTHAN -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(booleanAsString(leftDouble > rightDouble));
+                if(numeric)
+                    return InterpreterDataType.of(leftDouble > rightDouble);
                 else 
-                    return new InterpreterDataType(booleanAsString(leftData.value.compareTo(rightData.value) > 0));
+                    return InterpreterDataType.of(leftData.getValue().compareTo(rightData.getValue()) > 0);
             }
             case GREATEROREQUAL -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(booleanAsString(leftDouble >= rightDouble));
+                if(numeric)
+                    return InterpreterDataType.of(leftDouble >= rightDouble);
                 else 
-                    return new InterpreterDataType(booleanAsString(leftData.value.compareTo(rightData.value) >= 0));
+                    return InterpreterDataType.of(leftData.getValue().compareTo(rightData.getValue()) >= 0);
             }
             case AND -> {
-                if(leftBool == null)
-                    throw new AwkIllegalArgumentException("AND operator requires boolean operands");
-                return new InterpreterDataType(booleanAsString(leftBool && rightBool));
+                return InterpreterDataType.of(asBoolean(leftData) && asBoolean(rightData));
             }
             case OR -> {
-                if(leftBool == null)
-                    throw new AwkIllegalArgumentException("OR operator requires boolean operands");
-                return new InterpreterDataType(booleanAsString(leftBool || rightBool));
+                return InterpreterDataType.of(asBoolean(leftData) || asBoolean(rightData));
             }
             case MATCH -> {
-                return new InterpreterDataType(booleanAsString(Pattern.matches(rightData.value, leftData.value)));
+                return InterpreterDataType.of(Pattern.matches(rightData.getValue(), leftData.getText()));
             }
             case NOTMATCH -> {
-                return new InterpreterDataType(booleanAsString(!Pattern.matches(rightData.value, leftData.value)));
-            }
-            case IN -> {
-                if(right.get() instanceof OperationNode rightOperation && rightOperation.isOp(OperationNode.Operation.IN)){
-                // Multidimensional case
-
-
-                    if(!asBoolean(rightData.value))
-                        return new InterpreterDataType("0");
-                    InterpreterDataType indexData = getIDT(rightOperation.getLeft(), scope);
-
-
-                    InterpreterArrayDataType finalArray;
-                    if(rightOperation.getRight().get() instanceof OperationNode innerOperation && innerOperation.isOp(OperationNode.Operation.IN)) { // Guaranteed get() cause of operation type IN
-                        LinkedList<Node> indices = new LinkedList<Node>(List.of(rightOperation.getLeft())); // We need to store indices for later, starting with the inner in-operation's index.
-
-                        OperationNode currentNode = innerOperation;
-                        Optional<Node> nextNode = currentNode.getRight();
-                        do{
-                            if(nextNode.isPresent() && nextNode.get() instanceof OperationNode nextOperation && nextOperation.isOp(OperationNode.Operation.IN)){
-                                indices.add(currentNode.getLeft());
-                                currentNode = nextOperation;
-                                nextNode = currentNode.getRight();
-                            } else {
-                                indices.add(currentNode.getLeft());
-                                break;
-                            }
-                        }
-                        while (nextNode.isPresent());
-
-                        if(currentNode.getRight().isEmpty() || !((getIDT(currentNode.getRight().get(), scope) instanceof InterpreterArrayDataType array)))
-                            throw new AwkIllegalArgumentException("IN operator requires array operand");
-                        // Loop thru saved indices and unnest the array
-                        InterpreterDataType nextData = array;
-                        finalArray = array;
-                        while(!indices.isEmpty()){
-                            String indexValue = parseIndexValue(getIDT(indices.removeLast(), scope));
-                            if(!((nextData = ((InterpreterArrayDataType) nextData).getArrayValue().get(indexValue)) instanceof InterpreterArrayDataType arrayData))
-                                return new InterpreterDataType("0");
-                            finalArray = arrayData;
-                        }
-
-                        return new InterpreterDataType(booleanAsString(finalArray.getArrayValue().containsKey(parseIndexValue(leftData)) && asBoolean(rightData.value)));
-
-                    } else if(getIDT(rightOperation.getRight().get(), scope) instanceof InterpreterArrayDataType arrayData) {
-                        if (!(arrayData.getArrayValue().get(parseIndexValue(indexData)) instanceof InterpreterArrayDataType array))
-                            throw new AwkIllegalArgumentException("IN operator requires array operand");
-                        finalArray = array;
-                    } else
-                        throw new AwkIllegalArgumentException("IN operator requires array operand");
-
-                    return new InterpreterDataType(booleanAsString(finalArray.getArrayValue().containsKey(parseIndexValue(leftData)) && asBoolean(rightData.value)));
-                }
-                // Single dimensional case
-                if(!(rightData instanceof InterpreterArrayDataType array))
-                    throw new AwkIllegalArgumentException("IN operator requires array operand");
-
-                return new InterpreterDataType(booleanAsString(array.getArrayValue().containsKey(parseIndexValue(leftData))));
+                return InterpreterDataType.of(!Pattern.matches(rightData.getValue(), leftData.getText()));
             }
             case CONCATENATION -> {
-                return new InterpreterDataType(leftData.value + rightData.value);
+                return new InterpreterDataType(leftData.getValue() + rightData.getValue());
             }
             case ADD -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(Double.toString(leftDouble + rightDouble));
-                else 
-                    throw new AwkIllegalArgumentException("ADD operator requires numeric operand");
+                return new InterpreterDataType(leftDouble + rightDouble);
             }
             case SUBTRACT -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(Double.toString(leftDouble - rightDouble));
-                else 
-                    throw new AwkIllegalArgumentException("SUBTRACT operator requires numeric operand");
+                return new InterpreterDataType(leftDouble - rightDouble);
             }
             case MULTIPLY -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(Double.toString(leftDouble * rightDouble));
-                else 
-                    throw new AwkIllegalArgumentException("MULTIPLY operator requires numeric operand");
+                return new InterpreterDataType(leftDouble * rightDouble);
             }
             case DIVIDE -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(Double.toString(leftDouble / rightDouble));
-                else 
-                    throw new AwkIllegalArgumentException("DIVIDE operator requires numeric operand");
+                return new InterpreterDataType(leftDouble / rightDouble);
             }
             case MODULO -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(Double.toString(leftDouble % rightDouble));
-                else 
-                    throw new AwkIllegalArgumentException("MODULO operator requires numeric operand");
+                return new InterpreterDataType(leftDouble % rightDouble);
             }
             case EXPONENT -> {
-                if(leftDouble != null)
-                    return new InterpreterDataType(Double.toString(Math.pow(leftDouble, rightDouble)));
-                else 
-                    throw new AwkIllegalArgumentException("EXPONENTIATION operator requires numeric operand");
+                return new InterpreterDataType(Math.pow(leftDouble, rightDouble));
             }
             default -> {
                 throw new RuntimeException("Operation not implemented yet");
@@ -760,20 +980,24 @@ public class Interpreter {
     private InterpreterDataType evaluateFieldReference(FieldReferenceNode node, HashMap<String, InterpreterDataType> locals){
         Node index = node.getIndex().orElseThrow(); // getIndex should never fail here
         InterpreterDataType indexData = getIDT(index, locals);
-        int fieldIndex;
-        try {
-            fieldIndex = (int) Double.parseDouble(indexData.value); // any decimal value is truncated
-        } catch (NumberFormatException e){
-            throw new AwkIllegalArgumentException("Field index must be numeric");
-        }
+        int fieldIndex = (int) indexData.getNumber(); // any decimal value is truncated, and anything non-numeric is $0 like in any other awk
         
         if(fieldIndex < 0)
             throw new AwkIllegalArgumentException("Field index must be positive");
-        if(fieldIndex > Integer.parseInt(globalVariables.get("NF").value))
-            throw new AwkIndexOutOfBoundsException(String.format("Index %d out of bounds for %d fields", fieldIndex, Integer.parseInt(globalVariables.get("NF").value)));
         
-        return globalVariables.get("$" + fieldIndex);
+        return lineManager.getField(fieldIndex);
+    }
+    // (i, j) in a parses as j in (i in a), but the list is still chained together from i, so i is the whole subscript
+    private InterpreterDataType evaluateMembership(OperationNode operation, HashMap<String, InterpreterDataType> scope){
+        OperationNode innermost = operation;
+        while(innermost.getRight().isPresent() && innermost.getRight().get() instanceof OperationNode inner && inner.isOp(OperationNode.Operation.IN))
+            innermost = inner;
+        InterpreterDataType key = evaluateSubscript(innermost.getLeft(), scope);
+        if(innermost.getRight().isEmpty() || !(getIDT(innermost.getRight().get(), scope) instanceof InterpreterArrayDataType array))
+            throw new AwkIllegalArgumentException("IN operator requires array operand");
+        return InterpreterDataType.of(array.contains(key));
     }
+
     private InterpreterDataType evaluateVariableRef(VariableReferenceNode node, HashMap<String, InterpreterDataType> locals){
         String name = node.getName();
         Optional<Node> index;
@@ -784,6 +1008,10 @@ public class Interpreter {
             return evaluateFieldReference(field, locals);
         }
         
+        InterpreterDataType counter;
+        if((counter = lineManager.getCounter(name)) != null) // NR, FNR and NF are counters in the line manager, not globals
+            return counter;
+        
         HashMap<String, InterpreterDataType> scope = (locals == null) ? globalVariables : locals;
         
         // Get the variable data
@@ -794,34 +1022,15 @@ public class Interpreter {
             variableData = globalVariables.get(name);
         } else
             throw new AwkInterpreterException(String.format("Variable %s not defined", name));
-        String indexValue;
         // Handle the array (or field reference) case
         if((index = node.getIndex()).isPresent()){
-            if(variableData instanceof InterpreterArrayDataType arrayData){
-                InterpreterDataType indexData = getIDT(index.get(), scope);
-                indexValue = parseIndexValue(indexData);
-
-                HashMap<String, InterpreterDataType> array = arrayData.getArrayValue();
-                if(!array.containsKey(indexValue))
-                    throw new AwkIndexOutOfBoundsException(String.format("Index %s out of bounds for array %s", indexValue, name));
-
-                Optional<Node> nextIndex = index.get().getNext();
-                while(nextIndex.isPresent()){
-                // Multi-dimensional array reference
-                    if(!(array.get(indexValue) instanceof InterpreterArrayDataType data))
-                        throw new AwkInterpreterException(String.format("Attempted to make array reference to non-array element within within array %s ", name));
-                    array = data.getArrayValue();
-                    index = nextIndex;
-                    indexData = getIDT(index.get(), scope);
-                    indexValue = parseIndexValue(indexData);
-
-                    nextIndex = index.get().getNext();
-                }
+            if(variableData instanceof InterpreterArrayDataType array){
+                InterpreterDataType indexData = evaluateSubscript(index.get(), scope);
+                InterpreterDataType element = array.get(indexData);
+                if(element == null)
+                    throw new AwkIndexOutOfBoundsException(String.format("Index %s out of bounds for array %s", InterpreterArrayDataType.keyOf(indexData), name));
 
-                if(!array.containsKey(indexValue))
-                    throw new AwkIndexOutOfBoundsException(String.format("Index %s out of bounds for array %s", indexValue, name));
-
-                return array.get(indexValue);
+                return element;
             } else 
                 throw new AwkInterpreterException(String.format("Attempted to make array reference to non-array variable %s", name));
         }
@@ -853,7 +1062,9 @@ public class Interpreter {
         // (since post operations return the original value, not the new one)
         
 
-        if (scope.containsKey(name)) {
+        if ((original = lineManager.getCounter(name)) != null) {
+            // NR, FNR or NF, nothing else to look up
+        } else if (scope.containsKey(name)) {
             original = scope.get(name);
         } else if (globalVariables.containsKey(name)) {
             original = globalVariables.get(name);
@@ -867,97 +1078,70 @@ public class Interpreter {
             if((indexNode = fieldReference.getIndex()).isEmpty())
                 throw new AwkInterpreterException("Field assignment requires index, by %s".formatted(node.reportPosition()));
             InterpreterDataType indexData = getIDT(indexNode.get(), locals);
-            int index;
-            try {
-                index = (int) Double.parseDouble(indexData.value); // parseDouble used because numbers are stored as doubles
-            }catch(NumberFormatException e){
-                throw new AwkIllegalArgumentException("Field index must be numeric, by %s".formatted(node.reportPosition()));
-            }
-            if(!lineManager.editField(index, value.value))
-                throw new AwkIndexOutOfBoundsException(String.format("Index %d out of bounds for %d fields, by %s", index, Integer.parseInt(globalVariables.get("NF").value), node.reportPosition()));
+            int index = (int) indexData.getNumber(); // Numbers are stored as doubles
+            if(!lineManager.editField(index, value))
+                throw new AwkIndexOutOfBoundsException(String.format("Index %d out of bounds for %d fields, by %s", index, lineManager.countFields(), node.reportPosition()));
         } else if((indexNode = node.getTarget().getIndex()).isPresent()){
         // Array assignment case
-            HashMap<String, InterpreterDataType> newArray;
-            InterpreterDataType indexData = getIDT(indexNode.get(), locals);
-            String indexValue;
-            try{
-                // Floats with zero decimal are the same as ints, so we have to check for that
-                indexValue = Double.parseDouble(indexData.value) + "";
-                String[] split = indexValue.split("\\.");
-                if(Double.parseDouble(split[1]) == 0)
-                    indexValue = split[0]; // Truncate decimal if it's 0
-            } catch (NumberFormatException e){
-                indexValue = indexData.value;
-            }
+            InterpreterArrayDataType array;
+            InterpreterDataType indexValue = evaluateSubscript(indexNode.get(), locals);
             
-            // Get the original array, or create a new one if it doesn't exist
+            // Elements go straight into the original array, only a brand new one has to be put in scope
             if(original instanceof InterpreterArrayDataType arrayData)
-                newArray = arrayData.getArrayValue();
-            else newArray = new HashMap<>();
+                array = arrayData;
+            else {
+                array = new InterpreterArrayDataType();
+                scope.put(name, array);
+            }
 
-
-            if(indexNode.get().getNext().isPresent())
-                newArray = handleArrayDimension(newArray, indexNode.get(), value, scope);
-            else
-                newArray.put(indexValue, value);
-            scope.put(name, new InterpreterArrayDataType(newArray));
+            array.put(indexValue, value);
 
         } else {
         // Normal assignment case
             if(original instanceof InterpreterArrayDataType arrayData)
                 throw new AwkInterpreterException(String.format("Attempted to assign non-array value to array variable %s, by %s", name, node.reportPosition()));
-            scope.put(name, value);
+            try {
+                if(!lineManager.setCounter(name, value)) // Counters live in the line manager, everything else goes in scope
+                    scope.put(name, value.detached()); // last = $0 has to keep this record, not a view into the input
+                if(scope == globalVariables && name.equals("ARRAYMEM"))
+                    updateArrayBudget();
+            } catch(AwkIllegalArgumentException e){
+                throw new AwkIllegalArgumentException("%s, by %s".formatted(e.getMessage(), node.reportPosition()));
+            }
         } 
         
         if(postOperation) {
             if(original == null)
                 throw new AwkInterpreterException("Post-operation failed to get original value, isn't this impossible? By %s".formatted(node.reportPosition()));
-            return new ReturnType(original.value, false, node.reportPosition());
+            return new ReturnType(original, false, node.reportPosition());
         }
         else 
-            return new ReturnType(value.value, false, node.reportPosition()); // Maybe refactor value.value away
-    }
-
-    public HashMap<String, InterpreterDataType> handleArrayDimension(HashMap<String, InterpreterDataType> currentArray, Node indexNode, InterpreterDataType value, HashMap<String, InterpreterDataType> scope) {
-        if (indexNode.getNext().isEmpty()) {
-            currentArray.put(parseIndexValue(getIDT(indexNode, scope)), value);
-            return currentArray;
-        }
-
-        // Process the current dimension
-        String indexValue = parseIndexValue(getIDT(indexNode, scope)); // Method to get the index value from the node
-        HashMap<String, InterpreterDataType> nextArray;
-
-        if (!currentArray.containsKey(indexValue)) {
-            nextArray = new HashMap<>();
-            currentArray.put(indexValue, new InterpreterArrayDataType(nextArray));
-        } else if (currentArray.get(indexValue) instanceof InterpreterArrayDataType data) {
-            nextArray = data.getArrayValue();
-        } else {
-            throw new AwkInterpreterException("Non-array element access");
-        }
-        nextArray = handleArrayDimension(nextArray, indexNode.getNext().get(), value, scope);
-        currentArray.put(indexValue, new InterpreterArrayDataType(nextArray));
-        // Recursive call for the next dimension
-        return currentArray;
-
+            return new ReturnType(value, false, node.reportPosition());
     }
 
-    private String parseIndexValue(InterpreterDataType indexData) {
-        try {
-            String indexValue = Double.toString(Double.parseDouble(indexData.value));
-            String[] split = indexValue.split("\\.");
-            if (Double.parseDouble(split[1]) == 0) {
-                return split[0]; // Truncate decimal if it's 0
-            }
-            return indexValue;
-        } catch (NumberFormatException e) {
-            return indexData.value;
+    // The key an array subscript stands for. a[i, j] is a[i SUBSEP j], one element in the one array, keyed by the joined string.
+    // The builder gets reused from one subscript to the next, one that needs another while it's being built (a[b[i, j], k]) makes its own
+    private InterpreterDataType evaluateSubscript(Node index, HashMap<String, InterpreterDataType> locals){
+        if(index.getNext().isEmpty())
+            return getIDT(index, locals);
+
+        StringBuilder key = subscriptBuilder != null ? subscriptBuilder : new StringBuilder();
+        subscriptBuilder = null;
+        key.setLength(0);
+        InterpreterDataType separator = globalVariables.get("SUBSEP");
+        Optional<Node> part = Optional.of(index);
+        while(true){
+            InterpreterArrayDataType.appendKey(key, getIDT(part.get(), locals));
+            if((part = part.get().getNext()).isEmpty())
+                break;
+            key.append(separator == null ? "\034" : separator.getValue());
         }
+        subscriptBuilder = key;
+        return new InterpreterDataType(key.toString());
     }
     
     private InterpreterDataType evaluateConstant(ConstantNode<?> node){
-        return new InterpreterDataType(node.getValue());
+        return node.getData();
     }
     
     private void populateKnownFunctions(){
@@ -971,14 +1155,14 @@ public class Interpreter {
 
             // Collect args 
             while(array.containsKey(Integer.toString(i))) {
-                data = array.get(Integer.toString(i++)).value;
+                data = array.get(Integer.toString(i++)).getOutputValue();
                 args.add(data);
             }
 
             // Format args with separator
             StringBuilder output = new StringBuilder();
             for (int j = 1; j < i - 1; j++) // Stops one element early, see comment below
-                output.append(args.poll()).append(globalVariables.get("FS").value);
+                output.append(args.poll()).append(globalVariables.get("FS").getValue());
             output.append(args.poll()); // Last one doesn't get separator
 
             System.out.print(output);
@@ -996,14 +1180,14 @@ public class Interpreter {
             String data;
             // get 1st arg, the format string
             if(array.containsKey(Integer.toString(i))){
-                format = array.get(Integer.toString(i++)).value;
+                format = array.get(Integer.toString(i++)).getValue();
             } else {
                 throw new AwkIllegalArgumentException("printf requires a format string");
             }
 
             // get remaining args
             while(array.containsKey(Integer.toString(i))){
-                data = array.get(Integer.toString(i)).value;
+                data = array.get(Integer.toString(i)).getValue();
                     args.add(data);
                 i++;
             }
@@ -1020,15 +1204,15 @@ public class Interpreter {
             for (String currentFormat : formatArgs) {
                 switch (currentFormat) {
                     case "%d", "%i", "%x", "%X", "%o" -> {
-                        args.set(i, Integer.parseInt(args.get(i).toString()));
+                        args.set(i, (long) NumericString.valueOf(args.get(i).toString()));
                     }
                     case "%u" -> { // %u doesn't exist in java so we fudge it
-                        long longValue = Long.parseLong(args.get(i).toString());
+                        long longValue = (long) NumericString.valueOf(args.get(i).toString());
                         args.set(i, Long.toUnsignedString(longValue));
                         format = format.replaceAll("%u", "%s");
                     }
                     case "%f", "%e", "%E", "%g", "%G" -> {
-                        args.set(i, String.format(currentFormat, Double.parseDouble(args.get(i).toString())));
+                        args.set(i, String.format(currentFormat, NumericString.valueOf(args.get(i).toString())));
                     }
                     case "%c" -> {
                         args.set(i, (args.get(i).toString()).toCharArray()[0]);
@@ -1053,12 +1237,11 @@ public class Interpreter {
             else if(!args.containsKey("var"))
                 throw new AwkIllegalArgumentException("getline requires either no arguments, or a variable to store into");
             
-            try {
-                args.put("var", new InterpreterDataType(lineManager.getNext()));
-                return "1";
-            } catch (IndexOutOfBoundsException e){
+            CharSequence next = lineManager.getNext();
+            if(next == null)
                 return "0";
-            }
+            args.put("var", InterpreterDataType.strnum(next.toString())); // Goes into a variable, so no view into the input
+            return "1";
             
         };
         
@@ -1077,14 +1260,14 @@ public class Interpreter {
 
         // Gsub
         Function<HashMap<String,InterpreterDataType>,String> executeGsub = (HashMap<String,InterpreterDataType> args) -> {
-            String regex = args.get("regex").value;
-            String replacement = args.get("replacement").value;
+            String regex = args.get("regex").getValue();
+            String replacement = args.get("replacement").getValue();
             String target;
             if (args.containsKey("var")){
-                target = args.get("var").value;
+                target = args.get("var").getValue();
                 args.put("var", new InterpreterDataType(target = target.replaceAll(regex, replacement)));
             } else {
-                target = globalVariables.get("$0").value;
+                target = lineManager.getRecord().getValue();
                 lineManager.splitAndAssign(target = target.replaceAll(regex, replacement));
             }
             return target;
@@ -1100,15 +1283,15 @@ public class Interpreter {
 
         // Sub
         Function<HashMap<String,InterpreterDataType>,String> executeSub = (HashMap<String,InterpreterDataType> args) -> {
-            String regex = args.get("regex").value;
-            String replacement = args.get("replacement").value;
+            String regex = args.get("regex").getValue();
+            String replacement = args.get("replacement").getValue();
             String target;
             
             if(args.containsKey("var")) {
-                target = args.get("var").value;
+                target = args.get("var").getValue();
                 args.put("var", new InterpreterDataType(target = target.replaceFirst(regex, replacement)));
             } else {
-                target = globalVariables.get("$0").value;
+                target = lineManager.getRecord().getValue();
                 lineManager.splitAndAssign(target = target.replaceFirst(regex, replacement));
             }
             return target;
@@ -1120,8 +1303,8 @@ public class Interpreter {
 
         // Match
         Function<HashMap<String,InterpreterDataType>,String> executeMatch = (HashMap<String,InterpreterDataType> args) -> {
-            String target = args.get("target").value;
-            String regex = args.get("regex").value;
+            String target = args.get("target").getValue();
+            String regex = args.get("regex").getValue();
 
             // Regex matcher gets our match index for free
             Matcher matcher = Pattern.compile(regex).matcher(target);
@@ -1133,18 +1316,17 @@ public class Interpreter {
 
 
             if(args.containsKey("varArray")){
-                HashMap<String, InterpreterDataType> extractedArray;
-                if(!(args.get("varArray") instanceof InterpreterArrayDataType arrayData))
-                    extractedArray = new HashMap<>();
-                else
-                    extractedArray = arrayData.getArrayValue();
+                InterpreterArrayDataType extractedArray;
+                if(!(args.get("varArray") instanceof InterpreterArrayDataType arrayData)){
+                    extractedArray = new InterpreterArrayDataType();
+                    args.put("varArray", extractedArray);
+                } else
+                    extractedArray = arrayData;
                 int i = 1; // 1-indexed
 
                 for(int j = 0; j <= matcher.groupCount(); j++) //
                 // Fill the array with groups
-                    extractedArray.put(Integer.toString(i++), new InterpreterDataType(matcher.group(j)));
-
-                args.put("varArray", new InterpreterArrayDataType(extractedArray));
+                    extractedArray.put(new InterpreterDataType(i++), new InterpreterDataType(matcher.group(j)));
             }
             
             return Integer.toString(firstMatchAt + 1); // 1-indexed
@@ -1162,12 +1344,12 @@ public class Interpreter {
             if(args.containsKey("target"))
                 target = args.get("target");
             else
-                target = globalVariables.get("$0");
+                target = lineManager.getRecord();
 
             if(target instanceof InterpreterArrayDataType array)
-                return Integer.toString(array.getArrayValue().size());
+                return Integer.toString(array.size());
             else
-                return Integer.toString(target.value.length());
+                return Integer.toString(target.getValue().length());
         };
         
         functions.put("length", new BuiltInFunctionDefinitionNode("length", executeLength, List.of(
@@ -1178,8 +1360,8 @@ public class Interpreter {
 
         // Index
         Function<HashMap<String,InterpreterDataType>,String> executeIndex = (HashMap<String,InterpreterDataType> args) -> {
-            String string = args.get("string").value;
-            String substring = args.get("substring").value;
+            String string = args.get("string").getValue();
+            String substring = args.get("substring").getValue();
 
             return Integer.toString(string.indexOf(substring) + 1); // 1-indexed
         };
@@ -1191,9 +1373,9 @@ public class Interpreter {
         
         // Substr
         Function<HashMap<String,InterpreterDataType>,String> executeSubstr = (HashMap<String,InterpreterDataType> args) -> {
-            String string = args.get("string").value;
-            int start = (int) Double.parseDouble(args.get("start").value);
-            int length = args.containsKey("length") ? (int) Double.parseDouble(args.get("length").value) : string.length();
+            String string = args.get("string").getValue();
+            int start = (int) args.get("start").getNumber();
+            int length = args.containsKey("length") ? (int) args.get("length").getNumber() : string.length();
             // ^ Get length arg (as int) or default to length of string
             
             if(length < 0 || length > string.length())
@@ -1210,7 +1392,7 @@ public class Interpreter {
 
         // ToLower
         Function<HashMap<String,InterpreterDataType>,String> executeToLower = (HashMap<String,InterpreterDataType> args) -> {
-            String string = args.get("string").value;
+            String string = args.get("string").getValue();
 
             return string.toLowerCase();
         };
@@ -1222,7 +1404,7 @@ public class Interpreter {
 
         // ToUpper
         Function<HashMap<String,InterpreterDataType>,String> executeToUpper = (HashMap<String,InterpreterDataType> args) -> {
-            String string = args.get("string").value;
+            String string = args.get("string").getValue();
 
             return string.toUpperCase();
         };
@@ -1234,6 +1416,43 @@ public class Interpreter {
 
     }
     
+    // CONVFMT or OFMT as a formatter. Works before any interpreter exists too, with awk's default
+    public static NumberFormatter getNumberFormat(String name){
+        InterpreterDataType format = globalVariables == null ? null : globalVariables.get(name);
+        return NumberFormatter.of(format == null ? "%.6g" : format.getValue());
+    }
+    
+    // ARRAYMEM, how many bytes off-heap arrays can take up before they start spilling to disk (see OffHeapTable).
+    // -1 if it isn't set, which keeps every array on the heap
+    public static long getArrayBudget(){
+        return arrayBudget;
+    }
+
+    // Parses ARRAYMEM into arrayBudget. Done when the interpreter starts and whenever ARRAYMEM is assigned, so a bad value
+    // is reported right away (not once some array gets big) and OffHeapTable doesn't parse it again on every put.
+    // Takes a k, m or g suffix
+    private static void updateArrayBudget(){
+        InterpreterDataType budget = globalVariables.get("ARRAYMEM");
+        if(budget == null || budget.getValue().isEmpty()){
+            arrayBudget = -1;
+            return;
+        }
+        String value = budget.getValue().trim().toLowerCase();
+        if(value.isEmpty())
+            throw new AwkIllegalArgumentException("ARRAYMEM should be a size in bytes like 512m, got \"%s\"".formatted(budget.getValue()));
+        long unit = switch(value.charAt(value.length() - 1)){
+            case 'k' -> 1L << 10;
+            case 'm' -> 1L << 20;
+            case 'g' -> 1L << 30;
+            default -> 1;
+        };
+        if(unit != 1)
+            value = value.substring(0, value.length() - 1);
+        if(!NumericString.looksNumeric(value) || NumericString.valueOf(value) < 0)
+            throw new AwkIllegalArgumentException("ARRAYMEM should be a size in bytes like 512m, got \"%s\"".formatted(budget.getValue()));
+        arrayBudget = (long) (NumericString.valueOf(value) * unit);
+    }
+
     public static Optional<InterpreterDataType> getGlobalVariable(String name){
         if(globalVariables.containsKey(name))
             return Optional.of(globalVariables.get(name));
@@ -1243,24 +1462,17 @@ public class Interpreter {
     
     
     
-    public static boolean asBoolean(String value){
-        if(value.isEmpty()) // "" is false
-            return false;
-        ;
-        try {
-        // If it's a number return that interpretation
-            return Double.parseDouble(value) != 0;
-        } catch (NumberFormatException e){
-        // If it's not, we have a non-empty string (true)
-            return true;
-        }
-        
+    // Numbers (and numeric looking strnums) are true unless they're 0, strings unless they're empty. Uses the cached number if there is one
+    public static boolean asBoolean(InterpreterDataType data){
+        if(data.isNumeric())
+            return data.getNumber() != 0;
+        return !data.getValue().isEmpty();
     }
     
-    private static String booleanAsString(Boolean bool){
-        return bool ? "1" : "0";
+    public static boolean asBoolean(String value){
+        return asBoolean(new InterpreterDataType(value));
     }
-
+    
     private static String numberToString(Number number){
         if(number instanceof Double doubleNumber)
             return doubleNumber.toString();
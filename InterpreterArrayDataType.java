@@ -1,39 +1,275 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
+// An AWK array. To scripts every key is a string, but most arrays get filled as a[1], a[2], a[++n]..., so as long as
+// every key is a small non-negative integer the elements sit in a plain growable array indexed by the number itself,
+// no formatting or hashing needed. The first key that doesn't fit (a string other than a plain "7", a fraction, a negative
+// number, or an index way past the rest) moves everything into a StringHashTable keyed by the string form, and the array stays that way.
+// With ARRAYMEM set, a hashed array that keeps growing moves again, off the heap into an OffHeapTable.
+// PERSIST arrays start out empty with a file to read, which happens the first time anything looks at them (see ArrayFile).
 public class InterpreterArrayDataType extends InterpreterDataType{
-    private final HashMap<String, InterpreterDataType> arrayValue;
-    public InterpreterArrayDataType(HashMap<String, InterpreterDataType> value){
-        super(stringify(value)); // placeholder, pretty much just for debugging potential. If you ever see this in the output, something went wrong.
-        arrayValue = value;
-    }
-    
-    public HashMap<String, InterpreterDataType> getArrayValue(){
-        return arrayValue;
-    }
-    
-    private static String stringify(HashMap<String, InterpreterDataType> array){
-        if(array.isEmpty()) return "{}";
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int MAX_GAP = 64; // How far past the elements a new index can land and still stay dense
+    private static final int OFF_HEAP_AFTER = 1 << 16; // Elements a hashed array gets before ARRAYMEM is checked (and then again every this many)
+
+    private InterpreterDataType[] dense = new InterpreterDataType[INITIAL_CAPACITY]; // dense[i] is a[i], null if there's no such element. Null itself once hashed
+    private int size;
+    private ArrayTable hashed; // Null while dense
+    private Path source; // A PERSIST file that hasn't been read yet
+    private Function<IOException, RuntimeException> loadFailure; // What to throw if it can't be read
+
+    public InterpreterArrayDataType(){
+        super((String) null);
+    }
+
+    // Reads the array from file the first time it's needed, for PERSIST. That can be anywhere in the program,
+    // so the caller says what a file that can't be read turns into
+    public void loadLazily(Path file, Function<IOException, RuntimeException> failure){
+        source = file;
+        loadFailure = failure;
+    }
+
+    // False while the PERSIST file is still unread, in which case there's nothing new to write back either
+    public boolean isLoaded(){
+        return source == null;
+    }
+
+    private void load(){
+        Path file = source;
+        source = null; // Reading puts elements, which mustn't come back here
+        try {
+            ArrayFile.read(file, this);
+        } catch(IOException e){
+            // Whatever got read before it went wrong goes, the array is still the unread file (and won't be saved over it)
+            clear();
+            source = file;
+            throw loadFailure.apply(e);
+        }
+    }
+
+    public InterpreterDataType get(InterpreterDataType key){
+        if(source != null)
+            load();
+        if(hashed != null)
+            return hashed.get(keyOf(key));
+        int slot = slotOf(key);
+        return slot >= 0 && slot < dense.length ? dense[slot] : null;
+    }
+
+    public boolean contains(InterpreterDataType key){
+        return get(key) != null;
+    }
+
+    public void put(InterpreterDataType key, InterpreterDataType value){
+        if(source != null)
+            load();
+        value.detached(); // Elements outlive the record they might have come from
+        if(hashed != null || !putDense(slotOf(key), value))
+            putHashed(keyOf(key), value);
+    }
+
+    // For a key that's already what keyOf would make of it, the way ArrayFile reads them back
+    public void put(String key, InterpreterDataType value){
+        if(source != null)
+            load();
+        if(hashed != null || !putDense(slotOf(key), value))
+            putHashed(key, value);
+    }
+
+    // False if the slot doesn't fit in the dense store, which is hashed from then on
+    private boolean putDense(int slot, InterpreterDataType value){
+        if(!(slot >= 0 && slot < dense.length || fitsDense(slot))){
+            toHashed();
+            return false;
+        }
+        if(slot >= dense.length)
+            dense = Arrays.copyOf(dense, Math.max(dense.length * 2, slot + 1));
+        if(dense[slot] == null)
+            size++;
+        dense[slot] = value;
+        return true;
+    }
+
+    private void putHashed(String key, InterpreterDataType value){
+        hashed.put(key, value);
+        if(hashed.size() % OFF_HEAP_AFTER == 0 && hashed instanceof StringHashTable && Interpreter.getArrayBudget() >= 0)
+            toOffHeap();
+    }
+
+    // True if the element was there
+    public boolean remove(InterpreterDataType key){
+        if(source != null)
+            load();
+        if(hashed != null)
+            return hashed.remove(keyOf(key));
+        int slot = slotOf(key);
+        if(slot < 0 || slot >= dense.length || dense[slot] == null)
+            return false;
+        dense[slot] = null;
+        size--;
+        return true;
+    }
+
+    // delete with no index, the whole array
+    public void clear(){
+        source = null; // Whatever was in the file is gone too
+        if(hashed instanceof OffHeapTable offHeap)
+            offHeap.release();
+        dense = new InterpreterDataType[INITIAL_CAPACITY];
+        size = 0;
+        hashed = null;
+    }
+
+    public int size(){
+        if(source != null)
+            load();
+        return hashed != null ? hashed.size() : size;
+    }
+
+    // The elements themselves (that's what for-in hands out), in index order while dense
+    public Iterable<InterpreterDataType> values(){
+        if(source != null)
+            load();
+        if(hashed != null)
+            return hashed.values();
+        InterpreterDataType[] elements = dense; // Growing swaps the array out from under us, keep going with the old one
+        return () -> new Iterator<>(){
+            private int next;
+
+            @Override
+            public boolean hasNext(){
+                // Skips empty slots only now, the loop body may have emptied some since the last call
+                while(next < elements.length && elements[next] == null)
+                    next++;
+                return next < elements.length;
+            }
+
+            @Override
+            public InterpreterDataType next(){
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                return elements[next++];
+            }
+        };
+    }
+
+    public void forEach(BiConsumer<String, InterpreterDataType> action){
+        if(source != null)
+            load();
+        if(hashed != null){
+            hashed.forEach(action);
+            return;
+        }
+        for(int i = 0; i < dense.length; i++)
+            if(dense[i] != null)
+                action.accept(Integer.toString(i), dense[i]);
+    }
+
+    // The string a key stands for. Strings, strnums included, are used exactly as they are, so a["007"], a["7.0"] and a[7]
+    // are three elements. Only numbers that were computed get turned into a string, integers directly and the rest with CONVFMT
+    public static String keyOf(InterpreterDataType key){
+        if(!key.isComputed())
+            return key.getValue();
+        double number = key.getNumber();
+        if(InterpreterDataType.isIntegral(number))
+            return Long.toString((long) number);
+        return Interpreter.getNumberFormat("CONVFMT").format(number);
+    }
+
+    // keyOf, straight onto the end of a composite key. Integers skip the intermediate string
+    public static void appendKey(StringBuilder builder, InterpreterDataType key){
+        if(key.isComputed() && InterpreterDataType.isIntegral(key.getNumber()))
+            builder.append((long) key.getNumber());
+        else
+            builder.append(keyOf(key));
+    }
+
+    // The dense index for a key, or -1 if it has to be hashed. Same keys keyOf gives "0", "1", "2"... to
+    private static int slotOf(InterpreterDataType key){
+        if(!key.isComputed())
+            return slotOf(key.getText());
+        double number = key.getNumber();
+        int slot = (int) number;
+        return slot == number && slot >= 0 ? slot : -1;
+    }
+
+    // slotOf for a key that's already a string: only plain non-negative integers, the way keyOf writes them
+    private static int slotOf(CharSequence key){
+        int length = key.length();
+        if(length == 0 || length > 9 || (key.charAt(0) == '0' && length > 1))
+            return -1;
+        int slot = 0;
+        for(int i = 0; i < length; i++){
+            char c = key.charAt(i);
+            if(c < '0' || c > '9')
+                return -1;
+            slot = slot * 10 + (c - '0');
+        }
+        return slot;
+    }
+
+    // An index past the end is only worth growing for if the array doesn't end up mostly empty
+    private boolean fitsDense(int slot){
+        return slot >= 0 && slot < 2 * size + MAX_GAP;
+    }
+
+    private void toHashed(){
+        hashed = new StringHashTable(size + 1);
+        for(int i = 0; i < dense.length; i++)
+            if(dense[i] != null)
+                hashed.put(Integer.toString(i), dense[i]);
+        dense = null;
+    }
+
+    private void toOffHeap(){
+        OffHeapTable offHeap = new OffHeapTable();
+        hashed.forEach(offHeap::put);
+        hashed = offHeap;
+    }
+
+    // Placeholder, pretty much just for debugging potential. If you ever see this in the output, something went wrong.
+    // Only built when something asks, elements get written into the array in place and this would walk the whole array every time
+    @Override
+    public String getValue(){
+        if(size() == 0) return "{}";
         StringBuilder sb = new StringBuilder();
         sb.append("{");
-        for (String key : array.keySet()){
+        forEach((key, value) -> {
             sb.append(key);
             sb.append(": ");
-            sb.append(array.get(key).value);
+            sb.append(value.getValue());
             sb.append(", ");
-        }
+        });
         sb.delete(sb.length()-2, sb.length()); // get rid of ", " at the end
         sb.append("}");
         return sb.toString();
     }
-    
+
+    private HashMap<String, InterpreterDataType> toMap(){
+        HashMap<String, InterpreterDataType> map = new HashMap<>();
+        forEach(map::put);
+        return map;
+    }
+
     @Override
     public boolean equals(Object o){
         if(this == o) return true;
         if(o == null || getClass() != o.getClass()) return false;
-        
+
         InterpreterArrayDataType that = (InterpreterArrayDataType) o;
-        
-        return arrayValue.equals(that.arrayValue);
+
+        return toMap().equals(that.toMap());
     }
-    
+
+    @Override
+    public int hashCode(){
+        return toMap().hashCode();
+    }
+
 }
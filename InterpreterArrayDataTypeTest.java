@@ -0,0 +1,112 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InterpreterArrayDataTypeTest {
+
+    @Before
+    public void resetGlobals(){
+        new Interpreter(List.of()); // Default CONVFMT, whatever another test left behind
+    }
+
+    private static InterpreterDataType number(double number){
+        return new InterpreterDataType(number);
+    }
+
+    private static InterpreterDataType string(String string){
+        return new InterpreterDataType(string);
+    }
+
+    // Subscripts are strings. Only computed numbers get converted, strings (strnums too) are used exactly as they are
+    @Test
+    public void testKeysDontCollide(){
+        InterpreterArrayDataType k = new InterpreterArrayDataType();
+        k.put(string("007"), string("a"));
+        k.put(string("7.0"), string("b"));
+        k.put(number(7), string("c"));
+        assertEquals(3, k.size());
+        assertEquals(string("a"), k.get(string("007")));
+        assertEquals(string("b"), k.get(string("7.0")));
+        assertEquals(string("c"), k.get(number(7)));
+        assertEquals(string("c"), k.get(string("7")));
+        assertEquals(string("c"), k.get(number(7.0)));
+
+        k = new InterpreterArrayDataType();
+        k.put(InterpreterDataType.strnum("007"), string("a")); // A field holding 007
+        k.put(InterpreterDataType.strnum(" 7"), string("b"));
+        k.put(InterpreterDataType.strnum("7"), string("c"));
+        assertEquals(3, k.size());
+        assertEquals(string("c"), k.get(number(7)));
+    }
+
+    @Test
+    public void testIn(){
+        InterpreterArrayDataType k = new InterpreterArrayDataType();
+        k.put(number(7), string("x"));
+        assertTrue(k.contains(number(7)));
+        assertTrue(k.contains(string("7")));
+        assertTrue(k.contains(InterpreterDataType.strnum("7")));
+        assertFalse(k.contains(string("007")));
+        assertFalse(k.contains(string("7.0")));
+        assertFalse(k.contains(InterpreterDataType.strnum("07")));
+        assertFalse(k.contains(InterpreterDataType.strnum("7e0")));
+        assertFalse(k.remove(string("07")));
+        assertTrue(k.remove(string("7")));
+        assertEquals(0, k.size());
+    }
+
+    // Once hashed the keys still mean the same thing
+    @Test
+    public void testKeysWhileHashed(){
+        InterpreterArrayDataType k = new InterpreterArrayDataType();
+        k.put(number(1), string("one"));
+        k.put(string("x"), string("x"));
+        k.put(string("01"), string("zero one"));
+        k.put(number(0.5), string("half"));
+        assertEquals(4, k.size());
+        assertEquals(string("one"), k.get(string("1")));
+        assertEquals(string("zero one"), k.get(InterpreterDataType.strnum("01")));
+        assertEquals(string("half"), k.get(string("0.5")));
+        assertNull(k.get(string("0.50")));
+        assertNull(k.get(InterpreterDataType.strnum(".5")));
+    }
+
+    // Non-integral numbers go through CONVFMT
+    @Test
+    public void testComputedKeys(){
+        InterpreterArrayDataType k = new InterpreterArrayDataType();
+        k.put(number(0.1 + 0.2), string("x"));
+        assertTrue(k.contains(string("0.3"))); // %.6g of 0.30000000000000004
+        assertEquals("0.3", InterpreterArrayDataType.keyOf(number(0.1 + 0.2)));
+        assertEquals("-3", InterpreterArrayDataType.keyOf(number(-3)));
+        assertEquals("1.0", InterpreterArrayDataType.keyOf(string("1.0")));
+        assertEquals("1", InterpreterArrayDataType.keyOf(InterpreterDataType.TRUE));
+    }
+
+    @Test
+    public void testCompositeKeys(){
+        StringBuilder key = new StringBuilder();
+        InterpreterArrayDataType.appendKey(key, number(1));
+        key.append('\034');
+        InterpreterArrayDataType.appendKey(key, InterpreterDataType.strnum("01"));
+        key.append('\034');
+        InterpreterArrayDataType.appendKey(key, number(2.5));
+        assertEquals("1\03401\0342.5", key.toString());
+    }
+
+    // Plain integer strings still go in the dense store, in index order
+    @Test
+    public void testStringIndexesStayDense(){
+        InterpreterArrayDataType k = new InterpreterArrayDataType();
+        for(int i = 9; i >= 0; i--)
+            k.put(i % 2 == 0 ? string(Integer.toString(i)) : number(i), number(i));
+        List<InterpreterDataType> values = new ArrayList<>();
+        k.values().forEach(values::add);
+        for(int i = 0; i < 10; i++)
+            assertEquals(number(i), values.get(i));
+    }
+}
@@ -1,14 +1,145 @@
 import java.util.Objects;
 
+// A value is a string, a number, or both at once. Numbers that come out of arithmetic only get a string form
+// once something actually needs it (printing, concatenating, using them as an array index...),
+// and strings only get parsed the first time they're used as a number, after that the number is cached.
+// Strings that came from input (fields, $0, getline, -v) are AWK's "strnums": if one looks like a number (a field holding "42")
+// it compares as a number. Every other string is just a string, "10" < "9" compares them as text and "0" is true.
 public class InterpreterDataType {
-    public final String value;
-    public InterpreterDataType(String value){
+    private static final byte UNKNOWN = 0, NUMERIC = 1, NOT_NUMERIC = 2;
+
+    // Values never change once made (the lazy bits only ever fill in caches), so the common ones can be shared
+    public static final InterpreterDataType TRUE = new InterpreterDataType("1", 1, NUMERIC);
+    public static final InterpreterDataType FALSE = new InterpreterDataType("0", 0, NUMERIC);
+    public static final InterpreterDataType EMPTY = new InterpreterDataType("", 0, NOT_NUMERIC);
+    // What was never set (a field past NF, say): "" and 0 at once, so it's equal to both "" and 0
+    public static final InterpreterDataType UNINITIALIZED = new InterpreterDataType("", 0, NUMERIC);
+
+    private CharSequence value; // null for a number that hasn't been turned into a string yet. Input can hand us a view (see MappedRecordSource), that only becomes a String once something needs one
+    private double number; // Only meaningful once numberState isn't UNKNOWN
+    private byte numberState; // NOT_NUMERIC strings still have a number, it's just whatever number they start with
+    private boolean strnum; // From input, so it counts as a number if it looks like one (see strnum())
+    private boolean computed; // Made from a number rather than a string, print formats these with OFMT
+    private NumberFormatter convertedWith; // The CONVFMT value was built with, if it needed one. Changing CONVFMT redoes it
+
+    public InterpreterDataType(CharSequence value){
+        this.value = value;
+        this.numberState = value == null ? NOT_NUMERIC : UNKNOWN; // No value at all (ReturnType uses that) is just 0
+    }
+
+    public InterpreterDataType(double number){
+        this.number = number;
+        this.numberState = NUMERIC;
+        this.computed = true;
+    }
+
+    // Both forms known up front, only for the shared constants above
+    private InterpreterDataType(String value, double number, byte numberState){
         this.value = value;
+        this.number = number;
+        this.numberState = numberState;
+    }
+
+    public static InterpreterDataType of(boolean bool){
+        return bool ? TRUE : FALSE;
+    }
+
+    // A string that came from input. Only these ever get looked at to see if they're numeric, see isNumeric
+    public static InterpreterDataType strnum(CharSequence value){
+        InterpreterDataType data = new InterpreterDataType(value);
+        data.strnum = true;
+        return data;
+    }
+
+    // Same value, caches and all
+    protected InterpreterDataType(InterpreterDataType other){
+        this.value = other instanceof InterpreterArrayDataType ? other.getValue() : other.value; // Arrays only make their text when asked
+        this.number = other.number;
+        this.numberState = other.numberState;
+        this.strnum = other.strnum;
+        this.computed = other.computed;
+        this.convertedWith = other.convertedWith;
+    }
+
+    // Integers come out as integers ("2", not "2.0"), everything else goes through CONVFMT
+    public String getValue(){
+        if(value == null && numberState == NUMERIC){
+            if(isIntegral(number)){
+                value = Long.toString((long) number);
+                return (String) value;
+            }
+            convertedWith = Interpreter.getNumberFormat("CONVFMT");
+            value = convertedWith.format(number);
+        } else if(convertedWith != null && convertedWith != Interpreter.getNumberFormat("CONVFMT")){
+            convertedWith = null;
+            value = null;
+            return getValue();
+        } else if(value != null && !(value instanceof String))
+            value = value.toString(); // Only now does a view get copied out of the input
+        return (String) value;
+    }
+
+    // Copies a view out of the input into a String, for values that are about to be kept (stored in a variable or an array).
+    // A view kept past its record would hold on to the input buffer, or to a whole mapped window, for as long as the variable lives
+    public InterpreterDataType detached(){
+        if(value != null && !(value instanceof String))
+            value = value.toString();
+        return this;
+    }
+
+    // The string form without copying a view into a String first, for anything that's happy with a CharSequence (scanning, regex matching)
+    public CharSequence getText(){
+        return value == null || value instanceof String ? getValue() : value;
+    }
+
+    // What print outputs. Same as getValue, except non-integral numbers use OFMT.
+    // Strings are printed as they are, even ones that look like numbers
+    public String getOutputValue(){
+        if(!computed || isIntegral(number))
+            return getValue();
+        return Interpreter.getNumberFormat("OFMT").format(number);
+    }
+
+    public boolean isStrnum(){
+        return strnum;
+    }
+
+    // True for values made from a number (arithmetic and the like) rather than from a string
+    public boolean isComputed(){
+        return computed;
+    }
+
+    // Integral values that fit a long are formatted directly, without going near CONVFMT
+    public static boolean isIntegral(double number){
+        return number == Math.rint(number) && Math.abs(number) < 0x1p63;
+    }
+
+    // What comparisons and truth go by. True for numbers, and for strnums that look like one (see NumericString).
+    // Any other string isn't numeric, however it looks, so it doesn't even need scanning
+    public boolean isNumeric(){
+        if(numberState == UNKNOWN){
+            if(!strnum)
+                return false;
+            scan();
+        }
+        return numberState == NUMERIC;
+    }
+
+    // The value as a number. Strings that don't look numeric convert like they do in AWK, "12abc" is 12 and "abc" is 0
+    public double getNumber(){
+        if(numberState == UNKNOWN)
+            scan();
+        return number;
+    }
+
+    private void scan(){
+        NumericString scanned = NumericString.scan(value);
+        number = scanned.getValue();
+        numberState = strnum && scanned.isNumeric() ? NUMERIC : NOT_NUMERIC;
     }
 
-    
     public String toString(){
-        return String.format("IDT{%s}", value);
+        return String.format("IDT{%s}", getValue());
     }
     @Override
     public boolean equals(Object o) {
@@ -17,7 +148,12 @@ public class InterpreterDataType {
 
         InterpreterDataType that = (InterpreterDataType) o;
 
-        return Objects.equals(value, that.value);
+        return Objects.equals(getValue(), that.getValue());
     }
-    
+
+    @Override
+    public int hashCode(){
+        return Objects.hashCode(getValue());
+    }
+
 }
@@ -1,9 +1,19 @@
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class InterpreterTest {
     
@@ -23,40 +33,40 @@ public class InterpreterTest {
         // Test assignment
         Node node = new AssignmentNode(new VariableReferenceNode("x"), new ConstantNode<Double>(1.0));
         InterpreterDataType result = interpreter.getIDT(node, null);
-        assertEquals(new InterpreterDataType("1.0"), result);
+        assertEquals(new InterpreterDataType("1"), result);
         
         // Test math
         node = new AssignmentNode(new VariableReferenceNode("x"), new OperationNode(new ConstantNode<Double>(1.0), OperationNode.Operation.ADD, new ConstantNode<Double>(2.0)));
         result = interpreter.getIDT(node, null);
         
-        assertEquals(new InterpreterDataType("3.0"), result);
+        assertEquals(new InterpreterDataType("3"), result);
         
         // Test unary operators
         node = new OperationNode(new ConstantNode<Double>(1.0), OperationNode.Operation.UNARYNEG);
         result = interpreter.getIDT(node, null);
         
-        assertEquals(new InterpreterDataType("-1.0"), result);
+        assertEquals(new InterpreterDataType("-1"), result);
         
         node = new OperationNode(new ConstantNode<String>("     100%"), OperationNode.Operation.UNARYPOS);
         result = interpreter.getIDT(node, null);
         
-        assertEquals(new InterpreterDataType("100.0"), result);
+        assertEquals(new InterpreterDataType("100"), result);
         
         // Test pre operators
         node = new AssignmentNode(new VariableReferenceNode("x"), new OperationNode(new VariableReferenceNode("x"), OperationNode.Operation.PREINCREMENT));
         result = interpreter.getIDT(node, null);
 
-        assertEquals(new InterpreterDataType("4.0"), result);
+        assertEquals(new InterpreterDataType("4"), result);
         
         // Test post operators
         node = new AssignmentNode(new VariableReferenceNode("x"), new OperationNode(new VariableReferenceNode("x"), OperationNode.Operation.POSTINCREMENT));
         result = interpreter.getIDT(node, null);
         
-        assertEquals(new InterpreterDataType("4.0"), result); // Should return the value from before
+        assertEquals(new InterpreterDataType("4"), result); // Should return the value from before
         
         result = interpreter.getIDT(new VariableReferenceNode("x"), null);
         
-        assertEquals(new InterpreterDataType("5.0"), result); // Should be incremented
+        assertEquals(new InterpreterDataType("5"), result); // Should be incremented
         
         // Test reassignment
         node = new AssignmentNode(new VariableReferenceNode("x"), new ConstantNode<String>("Hello"));
@@ -82,7 +92,7 @@ public class InterpreterTest {
         node = new TernaryNode(new ConstantNode<Boolean>(false), new ConstantNode<Double>(1.0), new ConstantNode<Double>(2.0));
         result = interpreter.getIDT(node, null);
         
-        assertEquals(new InterpreterDataType("2.0"), result);
+        assertEquals(new InterpreterDataType("2"), result);
 
         // Test field reference
         node = new FieldReferenceNode(new ConstantNode<Double>(0.0));
@@ -113,7 +123,7 @@ public class InterpreterTest {
         interpreter.getIDT(node, null); // Assign 1.0 to array[0]
         result = interpreter.getIDT(new VariableReferenceNode("array", new ConstantNode<Double>(0.0)), null);
         
-        assertEquals(new InterpreterDataType("1.0"), result);
+        assertEquals(new InterpreterDataType("1"), result);
         
         result = interpreter.getIDT(new OperationNode(new ConstantNode<Double>(1.0), OperationNode.Operation.IN, new VariableReferenceNode("array")), null);
         result = interpreter.getIDT(new OperationNode(new ConstantNode<Double>(2.0), OperationNode.Operation.IN, new VariableReferenceNode("array")), null);
@@ -137,14 +147,14 @@ public class InterpreterTest {
         interpreter.evaluateStatement(ifNode, null);
 
         InterpreterDataType result = interpreter.getIDT(new VariableReferenceNode("x"), null);
-        assertEquals(new InterpreterDataType("1.0"), result);
+        assertEquals(new InterpreterDataType("1"), result);
 
         // run = false
         interpreter.evaluateStatement(new AssignmentNode(new VariableReferenceNode("run"), new ConstantNode<Boolean>(false)), null);
         interpreter.evaluateStatement(ifNode, null);
 
         result = interpreter.getIDT(new VariableReferenceNode("x"), null);
-        assertEquals(new InterpreterDataType("2.0"), result);
+        assertEquals(new InterpreterDataType("2"), result);
 
     }
 
@@ -165,7 +175,7 @@ public class InterpreterTest {
         interpreter.evaluateStatement(forNode, null);
 
         InterpreterDataType result = interpreter.getIDT(new VariableReferenceNode("y"), null);
-        assertEquals(new InterpreterDataType("-10.0"), result);
+        assertEquals(new InterpreterDataType("-10"), result);
 
         // Test continue
 
@@ -189,7 +199,7 @@ public class InterpreterTest {
         interpreter.evaluateStatement(forNode, null);
 
         result = interpreter.getIDT(new VariableReferenceNode("y"), null);
-        assertEquals(new InterpreterDataType("-9.0"), result);
+        assertEquals(new InterpreterDataType("-9"), result);
 
         // Test for in
 
@@ -225,7 +235,7 @@ public class InterpreterTest {
         interpreter.evaluateStatement(whileNode, null);
 
         InterpreterDataType result = interpreter.getIDT(new VariableReferenceNode("x"), null);
-        assertEquals(new InterpreterDataType("10.0"), result);
+        assertEquals(new InterpreterDataType("10"), result);
 
         // Test do while
 
@@ -240,7 +250,7 @@ public class InterpreterTest {
         interpreter.evaluateStatement(doWhileNode, null);
 
         result = interpreter.getIDT(new VariableReferenceNode("x"), null);
-        assertEquals(new InterpreterDataType("11.0"), result);
+        assertEquals(new InterpreterDataType("11"), result);
 
         // Test break
 
@@ -257,7 +267,7 @@ public class InterpreterTest {
         interpreter.evaluateStatement(breakWhile, null);
 
         result = interpreter.getIDT(new VariableReferenceNode("x"), null);
-        assertEquals(new InterpreterDataType("1.0"), result); // Should only increment once, otherwise would be infinite lol
+        assertEquals(new InterpreterDataType("1"), result); // Should only increment once, otherwise would be infinite lol
 
     }
 
@@ -283,12 +293,12 @@ public class InterpreterTest {
 
 
         InterpreterDataType result = interpreter.evaluateStatement(functionCall, null);;
-        assertEquals(new ReturnType("3.0"), result);
+        assertEquals(new ReturnType("3"), result);
 
         // Test function as expression (and return)
 
         result = interpreter.getIDT(new OperationNode(functionCall, OperationNode.Operation.POSTINCREMENT), null);
-        assertEquals(new InterpreterDataType("4.0"), result);
+        assertEquals(new InterpreterDataType("4"), result);
     }
     
     @Test
@@ -315,6 +325,230 @@ public class InterpreterTest {
         
         InterpreterDataType result = interpreter.evaluateStatement(call, null);
         
-        assertEquals(new ReturnType("15.0"), result);
+        assertEquals(new ReturnType("15"), result);
+    }
+    
+    // POSIX awk doesn't read any input for a program that's only BEGIN, so it can't end up waiting on a pipe that never closes
+    @Test
+    public void testBeginOnlyReadsNoInput(){
+        InputStream stdin = System.in;
+        try {
+            System.setIn(new InputStream(){
+                @Override
+                public int read(){
+                    throw new AssertionError("A BEGIN only program read stdin");
+                }
+            });
+            Interpreter interpreter = new Interpreter(new Parser(new Lexer("BEGIN { x = 1 }").lex()).parse());
+            interpreter.interpretProgram();
+            assertEquals(new InterpreterDataType("1"), Interpreter.getGlobalVariable("x").orElseThrow());
+            
+            // Anything with a main or END block still reads it
+            System.setIn(new ByteArrayInputStream("a\nb\n".getBytes()));
+            interpreter = new Interpreter(new Parser(new Lexer("END { x = NR }").lex()).parse());
+            interpreter.interpretProgram();
+            assertEquals(new InterpreterDataType("2"), Interpreter.getGlobalVariable("x").orElseThrow());
+        } finally {
+            System.setIn(stdin);
+        }
+    }
+    
+    // Only strings that came from input compare as numbers when they look like one, every other string is just a string
+    @Test
+    public void testStrnums(){
+        Interpreter interpreter = new Interpreter(List.of("10 9 0 abc"));
+        interpreter.evaluateStatement(new FunctionCallNode("getline", new LinkedList<>()), null); // Read the record in
+        
+        // Fields: "10" > "9" as numbers
+        InterpreterDataType result = interpreter.getIDT(new OperationNode(new FieldReferenceNode(new ConstantNode<Double>(1.0)), OperationNode.Operation.GREATERTHAN, new FieldReferenceNode(new ConstantNode<Double>(2.0))), null);
+        assertEquals(new InterpreterDataType("1"), result);
+        result = interpreter.getIDT(new OperationNode(new FieldReferenceNode(new ConstantNode<Double>(3.0)), OperationNode.Operation.NOT), null);
+        assertEquals(new InterpreterDataType("1"), result); // A field holding 0 is false
+        result = interpreter.getIDT(new OperationNode(new FieldReferenceNode(new ConstantNode<Double>(4.0)), OperationNode.Operation.LESSTHAN, new ConstantNode<Double>(1.0)), null);
+        assertEquals(new InterpreterDataType("0"), result); // "abc" doesn't look numeric, so it's compared as a string ("abc" < "1" is false)
+        
+        // String literals are strings: "10" < "9" as text, and "0" isn't empty so it's true
+        result = interpreter.getIDT(new OperationNode(new ConstantNode<String>("10"), OperationNode.Operation.LESSTHAN, new ConstantNode<String>("9")), null);
+        assertEquals(new InterpreterDataType("1"), result);
+        result = interpreter.getIDT(new OperationNode(new ConstantNode<String>("0"), OperationNode.Operation.NOT), null);
+        assertEquals(new InterpreterDataType("0"), result);
+        
+        // So is anything built out of strings, even from a field
+        result = interpreter.getIDT(new OperationNode(new OperationNode(new FieldReferenceNode(new ConstantNode<Double>(3.0)), OperationNode.Operation.CONCATENATION, new ConstantNode<String>("")), OperationNode.Operation.NOT), null);
+        assertEquals(new InterpreterDataType("0"), result);
+        
+        // A field assigned a number stays a number
+        interpreter.getIDT(new AssignmentNode(new FieldReferenceNode(new ConstantNode<Double>(2.0)), new OperationNode(new FieldReferenceNode(new ConstantNode<Double>(2.0)), OperationNode.Operation.MULTIPLY, new ConstantNode<Double>(2.0))), null);
+        result = interpreter.getIDT(new OperationNode(new FieldReferenceNode(new ConstantNode<Double>(2.0)), OperationNode.Operation.GREATERTHAN, new ConstantNode<Double>(10.0)), null);
+        assertEquals(new InterpreterDataType("1"), result);
+        
+        // Numeric built-ins come back as numbers
+        result = interpreter.getIDT(new OperationNode(new FunctionCallNode("length", new LinkedList<>(List.of(new ConstantNode<String>("abcdefghij")))), OperationNode.Operation.GREATERTHAN, new ConstantNode<Double>(9.0)), null);
+        assertEquals(new InterpreterDataType("1"), result);
+    }
+    
+    // String literals are plain strings, however numeric they look, and stay that way however often they're evaluated
+    @Test
+    public void testStringLiterals(){
+        Interpreter interpreter = new Interpreter(List.of("Test file ha ha"));
+        ConstantNode<String> ten = new ConstantNode<String>("10");
+        String[][] comparisons = {
+            {"10", "LESSTHAN", "9", "1"},
+            {"007", "EQUAL", "7", "0"},
+            {"1e3", "EQUAL", "1000", "0"},
+            {"7.0", "EQUAL", "7", "0"},
+            {" 7", "GREATERTHAN", "7", "0"},
+            {"abc", "LESSTHAN", "abd", "1"},
+            {"7", "EQUAL", "7", "1"},
+        };
+        for(String[] comparison : comparisons){
+            InterpreterDataType result = interpreter.getIDT(new OperationNode(new ConstantNode<String>(comparison[0]), OperationNode.Operation.valueOf(comparison[1]), new ConstantNode<String>(comparison[2])), null);
+            assertEquals(String.join(" ", comparison), new InterpreterDataType(comparison[3]), result);
+        }
+        
+        // Against a number it's still a string comparison, "10" < "9"
+        InterpreterDataType result = interpreter.getIDT(new OperationNode(ten, OperationNode.Operation.LESSTHAN, new ConstantNode<Double>(9.0)), null);
+        assertEquals(new InterpreterDataType("1"), result);
+        // "0" and "0.0" aren't empty, so they're true
+        result = interpreter.getIDT(new OperationNode(new ConstantNode<String>("0.0"), OperationNode.Operation.NOT), null);
+        assertEquals(new InterpreterDataType("0"), result);
+        
+        // Using the literal in arithmetic doesn't turn the shared value into a number for the next comparison
+        result = interpreter.getIDT(new OperationNode(ten, OperationNode.Operation.ADD, new ConstantNode<Double>(1.0)), null);
+        assertEquals(new InterpreterDataType("11"), result);
+        result = interpreter.getIDT(new OperationNode(ten, OperationNode.Operation.LESSTHAN, new ConstantNode<String>("9")), null);
+        assertEquals(new InterpreterDataType("1"), result);
+    }
+    
+    // Runs a whole program over input (put in a temporary file), with these -v assignments
+    private static void run(String program, String input, Map<String, String> variables) throws IOException {
+        Path file = Files.createTempFile("interpreter", ".txt");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, input, StandardCharsets.UTF_8);
+        new Interpreter(new Parser(new Lexer(program).lex()).parse(), List.of(file), new HashMap<>(variables), false, false).interpretProgram();
+    }
+    
+    private static String global(String name){
+        return Interpreter.getGlobalVariable(name).orElseThrow().getValue();
+    }
+    
+    // Fields only get split out as far as something asks for, in whatever order it asks
+    @Test
+    public void testLazySplit() throws IOException {
+        run("{ third = $3; first = $1; whole = $0 }", "a b c d\n", Map.of());
+        assertEquals("c", global("third"));
+        assertEquals("a", global("first"));
+        assertEquals("a b c d", global("whole"));
+        
+        // A record nobody looks into is never split at all, so bad JSON only fails for a program that reads a field
+        String input = "{\"a\": 1}\nnot json\n";
+        run("{ count = NR; last = $0 }", input, Map.of("JSONFIELDS", "a"));
+        assertEquals("2", global("count"));
+        assertEquals("not json", global("last"));
+        
+        RuntimeException e = assertThrows(RuntimeException.class, () -> run("{ first = $1 }", input, Map.of("JSONFIELDS", "a")));
+        assertTrue(e.getMessage(), e.getMessage().contains("Can't split record 2"));
+        
+        // FS changing partway through a record doesn't change how that record splits, even though it hasn't been split yet
+        run("NR == 1 { FS = \",\"; first = $1 } NR == 2 { second = $1 }", "a,b c\nd,e f\n", Map.of());
+        assertEquals("a,b", global("first"));
+        assertEquals("d", global("second"));
+    }
+    
+    // Assigning past NF grows the record, the fields in between are there but unset
+    @Test
+    public void testAssignPastEnd() throws IOException {
+        run("{ $3 = \"z\"; record = $0; count = NF }", "a b\n", Map.of());
+        assertEquals("a b z", global("record"));
+        assertEquals("3", global("count"));
+        
+        run("{ $5 = \"e\"; record = $0; count = NF; gap = ($3 == 0) }", "a b\n", Map.of());
+        assertEquals("a b   e", global("record"));
+        assertEquals("5", global("count"));
+        assertEquals("1", global("gap"));
+    }
+    
+    // Fields past NF were never set, so they're equal to both 0 and ""
+    @Test
+    public void testFieldsPastEnd() throws IOException {
+        run("{ zero = ($5 == 0); empty = ($5 == \"\"); less = ($5 < 1); text = $5 \"|\"; truth = !$5 }", "a b\n", Map.of());
+        assertEquals("1", global("zero"));
+        assertEquals("1", global("empty"));
+        assertEquals("1", global("less"));
+        assertEquals("|", global("text"));
+        assertEquals("1", global("truth"));
+    }
+    
+    // Setting NF cuts fields off (or pads with unset ones) and $0 is rebuilt with OFS
+    @Test
+    public void testSetFieldCount() throws IOException {
+        run("BEGIN { OFS = \"-\" } { NF = 2; record = $0; third = $3; count = NF; gone = ($3 == 0) }", "a b c d\n", Map.of());
+        assertEquals("a-b", global("record"));
+        assertEquals("", global("third"));
+        assertEquals("2", global("count"));
+        assertEquals("1", global("gone"));
+        
+        run("{ NF = 4; record = $0; padded = ($4 == 0) }", "a b\n", Map.of());
+        assertEquals("a b  ", global("record"));
+        assertEquals("1", global("padded"));
+    }
+    
+    // $0 = ... splits the new record with FS as it is right now
+    @Test
+    public void testAssignRecord() throws IOException {
+        run("{ FS = \",\"; $0 = \"x,y z\"; count = NF; second = $2 }", "a b\n", Map.of());
+        assertEquals("2", global("count"));
+        assertEquals("y z", global("second"));
+        
+        // And a field edit after that rebuilds from the new fields
+        run("{ $0 = \"p q r\"; $2 = \"Q\"; record = $0; count = NF }", "a b\n", Map.of());
+        assertEquals("p Q r", global("record"));
+        assertEquals("3", global("count"));
+    }
+    
+    private static InterpreterArrayDataType array(String name){
+        return (InterpreterArrayDataType) Interpreter.getGlobalVariable(name).orElseThrow();
+    }
+    
+    // Elements are written into the array that's already there, so writes pile up instead of each one starting from a copy
+    @Test
+    public void testArrayElementsInPlace() throws IOException {
+        run("function add(arr, k) { arr[k] = \"added\" } BEGIN { for(i = 0; i < 10; i++) a[i] = 0; for(i = 0; i < 1000; i++) a[i % 10] = a[i % 10] + 1; a[3] += 5; b = a[3]; add(a, \"x\"); has = (\"x\" in a) }", "", Map.of());
+        assertEquals(11, array("a").size());
+        assertEquals("105", global("b"));
+        assertEquals("1", global("has")); // The function got the same array, not a copy
+        assertEquals("added", array("a").get(new InterpreterDataType("x")).getValue());
+    }
+    
+    // a[i, j] is the one element a[i SUBSEP j], and (i, j) in a looks for that same key
+    @Test
+    public void testMultidimensionalArrays() throws IOException {
+        run("BEGIN { for(i = 0; i < 3; i++) for(j = 0; j < 3; j++) grid[i, j] = i * j; "
+            + "corner = grid[2, 2]; joined = grid[\"2\" SUBSEP \"1\"]; nested = grid[grid[1, 2], 1]; "
+            + "inside = ((1, 2) in grid); outside = ((3, 0) in grid); alias = grid[1][2]; delete grid[0, 0]; deleted = ((0, 0) in grid) }", "", Map.of());
+        assertEquals(8, array("grid").size());
+        assertEquals("4", global("corner"));
+        assertEquals("2", global("joined"));
+        assertEquals("2", global("nested"));
+        assertEquals("1", global("inside"));
+        assertEquals("0", global("outside"));
+        assertEquals("2", global("alias"));
+        assertEquals("0", global("deleted"));
+        assertEquals("1", array("grid").get(new InterpreterDataType("1\0341")).getValue()); // The key really is joined with \034
+    }
+    
+    // SUBSEP is read every time a subscript is built, so changing it only affects keys made after that
+    @Test
+    public void testSubsepReassigned() throws IOException {
+        run("BEGIN { a[1, 2] = \"old\"; SUBSEP = \":\"; a[1, 2] = \"new\"; colon = a[\"1:2\"]; before = ((1 \"\\034\" 2) in a); now = ((1, 2) in a) }", "", Map.of());
+        assertEquals(2, array("a").size());
+        assertEquals("new", global("colon"));
+        assertEquals("1", global("before"));
+        assertEquals("1", global("now"));
+        assertEquals("old", array("a").get(new InterpreterDataType("1\0342")).getValue());
+        
+        // Or from the command line
+        run("BEGIN { a[\"x\", \"y\"] = 1; found = (\"x-y\" in a) }", "", Map.of("SUBSEP", "-"));
+        assertEquals("1", global("found"));
     }
 }
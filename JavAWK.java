@@ -14,6 +14,14 @@ public class JavAWK {
                 java JavAWK "<AWK code>" [args]
                 java JavAWK -f <AWK file> [args]
                 java JavAWK "<AWK code>" -e "<AWK code>" [args]
+            Options:
+                -v <name>=<value>    set an AWK variable before BEGIN runs (e.g. -v FIELDWIDTHS="4 2:10 *")
+                                     -v JSONFIELDS=ts,user.id reads JSON lines, binding each path to $1..$n
+                                     -v ARRAYMEM=512m moves big arrays off the heap, spilling to temp files past 512m
+                                     -v PERSIST=totals:totals.db loads array totals from totals.db and saves it after END
+                --mmap               memory-map input files instead of streaming them (local files only)
+                --csv                read input as CSV (quoted fields can hold commas, quotes and newlines)
+            Input files ending in .gz are decompressed on the fly.
             
             """);
         LinkedList<String> code = new LinkedList<>();
@@ -22,6 +30,8 @@ public class JavAWK {
         Iterator<String> argIterator = Arrays.asList(args).iterator();
         String arg;
         HashMap<String, String> awkArgs = new HashMap<>();
+        boolean memoryMapped = false;
+        boolean csv = false;
         while(argIterator.hasNext())
             switch (arg = argIterator.next()) {
                 case "-e":
@@ -34,6 +44,19 @@ public class JavAWK {
                         throw new IllegalArgumentException("Could not read AWK file.", e);
                     }
                     break;
+                case "-v":
+                    String assignment = argIterator.next(); // Next arg is name=value
+                    int equals = assignment.indexOf('=');
+                    if(equals < 1)
+                        throw new IllegalArgumentException("Expected name=value after -v, got \"%s\"".formatted(assignment));
+                    awkArgs.put(assignment.substring(0, equals), unescape(assignment.substring(equals + 1)));
+                    break;
+                case "--mmap":
+                    memoryMapped = true;
+                    break;
+                case "--csv":
+                    csv = true;
+                    break;
                 default:
                     // Some cases need regex
                     if(arg.matches("^F"))
@@ -52,22 +75,43 @@ public class JavAWK {
         
         Interpreter interpreter;
         
-        if(fileArgs.isEmpty()) {
-            interpreter = new Interpreter(program, awkArgs);
-            interpreter.interpretProgram();
-        }
-        else try{
-            interpreter = new Interpreter(program, fileArgs.poll(), awkArgs);
-            interpreter.interpretProgram();
-            while(!fileArgs.isEmpty()){
-                interpreter.changeFile(fileArgs.poll());
-                interpreter.interpretProgram();
-            }
-            
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Could not read input file.", e);
-        }
+        if(fileArgs.isEmpty())
+            interpreter = new Interpreter(program, awkArgs, csv);
+        else
+            interpreter = new Interpreter(program, fileArgs, awkArgs, memoryMapped, csv);
+        interpreter.interpretProgram();
     }
     
     
+    
+    // -v values get the same escapes a string literal would, so things like -v RS='\0' or -v OFS='\t' work
+    private static String unescape(String value){
+        if(value.indexOf('\\') == -1)
+            return value;
+        StringBuilder unescaped = new StringBuilder();
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c != '\\' || i + 1 == value.length()){
+                unescaped.append(c);
+                continue;
+            }
+            c = value.charAt(++i);
+            switch(c){
+                case 'n' -> unescaped.append('\n');
+                case 't' -> unescaped.append('\t');
+                case 'r' -> unescaped.append('\r');
+                case 'b' -> unescaped.append('\b');
+                case 'f' -> unescaped.append('\f');
+                case '0', '1', '2', '3', '4', '5', '6', '7' -> {
+                    int code = c - '0';
+                    for(int digits = 1; digits < 3 && i + 1 < value.length() && value.charAt(i + 1) >= '0' && value.charAt(i + 1) <= '7'; digits++)
+                        code = code * 8 + (value.charAt(++i) - '0');
+                    unescaped.append((char) code);
+                }
+                case '\\', '"', '/' -> unescaped.append(c);
+                default -> unescaped.append('\\').append(c); // Leave anything else alone, it's probably meant for a regex
+            }
+        }
+        return unescaped.toString();
+    }
 }
@@ -0,0 +1,268 @@
+import java.util.Arrays;
+
+// JSON lines mode, every record is one JSON object and JSONFIELDS says which values become $1..$n,
+// e.g. JSONFIELDS="ts,user.id,status". Path segments are object keys, or element indexes for arrays ("tags.0").
+// The record is scanned once, front to back, the first time a field is asked for. Subtrees no path points into
+// are skipped over without building anything, so there's never a full document in memory.
+// Paths that aren't in the record come out as "", and so does null. Strings are unescaped, numbers and true/false
+// come out as written, and a path that points at an object or array gets that bit of raw JSON.
+public class JsonFieldSplitter implements FieldSplitter {
+    private final String[][] paths; // Each path split on "."
+    private final CharSequence[] values;
+    private CharSequence record;
+    private boolean scanned;
+    private int fieldCount; // One per path, or none for a blank record
+    private int field; // Index of the next field
+    private int index; // Scanner position in the record
+
+    public JsonFieldSplitter(String fields){
+        String[] specs = fields.strip().split("[ \t]*,[ \t]*");
+        paths = new String[specs.length][];
+        for(int i = 0; i < specs.length; i++){
+            if(specs[i].isEmpty())
+                throw new IllegalArgumentException("empty path");
+            paths[i] = specs[i].split("\\.", -1);
+        }
+        values = new CharSequence[specs.length];
+    }
+
+    @Override
+    public void reset(CharSequence record){
+        this.record = record;
+        this.scanned = false;
+        this.field = 0;
+    }
+
+    @Override
+    public CharSequence next(){
+        if(!hasField())
+            return null;
+        CharSequence value = values[field++];
+        return value == null ? "" : value;
+    }
+
+    @Override
+    public boolean skip(){
+        if(!hasField())
+            return false;
+        field++;
+        return true;
+    }
+
+    private boolean hasField(){
+        if(!scanned)
+            scan();
+        return field < fieldCount;
+    }
+
+    private void scan(){
+        scanned = true;
+        Arrays.fill(values, null);
+        index = 0;
+        skipWhitespace();
+        // A blank record has no fields, anything else has exactly one per path whether the record has it or not
+        fieldCount = index == record.length() ? 0 : values.length;
+        if(fieldCount == 0)
+            return;
+        int[] candidates = new int[paths.length];
+        for(int i = 0; i < candidates.length; i++)
+            candidates[i] = i;
+        if(peek() != '{')
+            throw malformed("expected an object");
+        value(0, candidates, candidates.length);
+        skipWhitespace();
+        if(index != record.length())
+            throw malformed("trailing characters after the object");
+    }
+
+    // Reads one value. candidates[0..count) are the paths that have matched every segment so far (depth of them),
+    // the ones that end here get the value, the rest need to look inside it
+    private void value(int depth, int[] candidates, int count){
+        skipWhitespace();
+        int start = index;
+        boolean terminal = false, deeper = false;
+        for(int i = 0; i < count; i++){
+            if(paths[candidates[i]].length == depth)
+                terminal = true;
+            else
+                deeper = true;
+        }
+
+        char c = peek();
+        if(deeper && (c == '{' || c == '['))
+            container(depth, candidates, count);
+        else if(c == '"' && terminal){
+            CharSequence string = string();
+            for(int i = 0; i < count; i++)
+                if(paths[candidates[i]].length == depth)
+                    values[candidates[i]] = string;
+            return;
+        } else
+            skipValue();
+
+        if(!terminal)
+            return;
+        CharSequence raw = record.subSequence(start, index);
+        if(raw.length() == 4 && raw.toString().equals("null"))
+            raw = "";
+        for(int i = 0; i < count; i++)
+            if(paths[candidates[i]].length == depth)
+                values[candidates[i]] = raw;
+    }
+
+    // Walks an object or array that at least one path goes into
+    private void container(int depth, int[] candidates, int count){
+        boolean object = peek() == '{';
+        char close = object ? '}' : ']';
+        index++;
+        skipWhitespace();
+        if(peek() == close){
+            index++;
+            return;
+        }
+
+        int[] matching = new int[count];
+        for(int element = 0; ; element++){
+            skipWhitespace();
+            CharSequence key;
+            if(object){
+                if(peek() != '"')
+                    throw malformed("expected a key");
+                key = string();
+                skipWhitespace();
+                expect(':');
+            } else
+                key = Integer.toString(element);
+
+            int matched = 0;
+            for(int i = 0; i < count; i++){
+                String[] path = paths[candidates[i]];
+                if(path.length > depth && path[depth].contentEquals(key))
+                    matching[matched++] = candidates[i];
+            }
+            if(matched == 0){
+                skipWhitespace();
+                skipValue(); // Nobody wants anything in here
+            } else
+                value(depth + 1, matching, matched);
+
+            skipWhitespace();
+            if(peek() == ','){
+                index++;
+                continue;
+            }
+            expect(close);
+            return;
+        }
+    }
+
+    // Moves past one value without looking at what's in it
+    private void skipValue(){
+        char c = peek();
+        if(c == '"'){
+            skipString();
+            return;
+        }
+        if(c == '{' || c == '['){
+            // Only brackets and strings matter here, everything else is just stepped over
+            char open = c;
+            int nesting = 0;
+            while(index < record.length()){
+                c = record.charAt(index);
+                if(c == '"'){
+                    skipString();
+                    continue;
+                }
+                index++;
+                if(c == '{' || c == '[')
+                    nesting++;
+                else if((c == '}' || c == ']') && --nesting == 0)
+                    return;
+            }
+            throw malformed("unclosed %s".formatted(open == '{' ? "object" : "array"));
+        }
+        // Number, true, false or null
+        int start = index;
+        while(index < record.length() && ",}] \t\r\n".indexOf(record.charAt(index)) == -1)
+            index++;
+        if(index == start)
+            throw malformed("expected a value");
+    }
+
+    private void skipString(){
+        index++; // Opening quote
+        while(index < record.length()){
+            char c = record.charAt(index++);
+            if(c == '\\')
+                index++;
+            else if(c == '"')
+                return;
+        }
+        throw malformed("unclosed string");
+    }
+
+    // Reads a string at index. Without escapes it's just a slice of the record, otherwise it gets unescaped into a copy
+    private CharSequence string(){
+        int start = ++index;
+        StringBuilder unescaped = null;
+        while(index < record.length()){
+            char c = record.charAt(index);
+            if(c == '"'){
+                index++;
+                return unescaped == null ? record.subSequence(start, index - 1) : unescaped;
+            }
+            if(c != '\\'){
+                if(unescaped != null)
+                    unescaped.append(c);
+                index++;
+                continue;
+            }
+
+            if(unescaped == null)
+                unescaped = new StringBuilder().append(record, start, index);
+            if(++index == record.length())
+                break;
+            char escaped = record.charAt(index++);
+            switch(escaped){
+                case 'n' -> unescaped.append('\n');
+                case 't' -> unescaped.append('\t');
+                case 'r' -> unescaped.append('\r');
+                case 'b' -> unescaped.append('\b');
+                case 'f' -> unescaped.append('\f');
+                case 'u' -> {
+                    if(index + 4 > record.length())
+                        throw malformed("bad \\u escape");
+                    try {
+                        unescaped.append((char) Integer.parseInt(record, index, index + 4, 16));
+                    } catch(NumberFormatException e){
+                        throw malformed("bad \\u escape");
+                    }
+                    index += 4;
+                }
+                default -> unescaped.append(escaped); // \" \\ and \/
+            }
+        }
+        throw malformed("unclosed string");
+    }
+
+    private void skipWhitespace(){
+        while(index < record.length() && " \t\r\n".indexOf(record.charAt(index)) != -1)
+            index++;
+    }
+
+    private char peek(){
+        if(index == record.length())
+            throw malformed("unexpected end of record");
+        return record.charAt(index);
+    }
+
+    private void expect(char c){
+        if(peek() != c)
+            throw malformed("expected '%c'".formatted(c));
+        index++;
+    }
+
+    private IllegalArgumentException malformed(String problem){
+        return new IllegalArgumentException("Malformed JSON at column %d, %s".formatted(index + 1, problem));
+    }
+}
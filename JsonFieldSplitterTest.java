@@ -0,0 +1,100 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonFieldSplitterTest {
+
+    private static List<String> split(String fields, String record){
+        JsonFieldSplitter splitter = new JsonFieldSplitter(fields);
+        splitter.reset(record);
+        List<String> values = new ArrayList<>();
+        CharSequence value;
+        while((value = splitter.next()) != null)
+            values.add(value.toString());
+        return values;
+    }
+
+    private static void assertMalformed(String fields, String record){
+        JsonFieldSplitter splitter = new JsonFieldSplitter(fields);
+        splitter.reset(record);
+        IllegalArgumentException e = assertThrows(record, IllegalArgumentException.class, splitter::next);
+        assertTrue(e.getMessage(), e.getMessage().startsWith("Malformed JSON at column"));
+    }
+
+    @Test
+    public void testFlatObject(){
+        String record = "{\"ts\": 1700000000, \"status\": \"ok\", \"ok\": true, \"gone\": null}";
+        assertEquals(List.of("1700000000", "ok", "true", ""), split("ts,status,ok,gone", record));
+        assertEquals(List.of("ok", "1700000000"), split(" status , ts ", record)); // Any order, blanks around the commas
+        assertEquals(List.of("", "ok"), split("missing,status", record)); // Paths that aren't there are empty
+    }
+
+    @Test
+    public void testNested(){
+        String record = "{\"user\": {\"id\": 42, \"name\": {\"first\": \"Ada\"}}, \"tags\": [\"a\", [\"b\", \"c\"], {\"d\": 1}], \"n\": 7}";
+        assertEquals(List.of("42", "Ada", "7"), split("user.id,user.name.first,n", record));
+        assertEquals(List.of("a", "c", "1"), split("tags.0,tags.1.1,tags.2.d", record));
+        // A path and one going deeper into the same value both get theirs
+        assertEquals(List.of("{\"first\": \"Ada\"}", "Ada"), split("user.name,user.name.first", record));
+        assertEquals(List.of("[\"b\", \"c\"]"), split("tags.1", record)); // Containers come out as raw JSON
+        assertEquals(List.of("7", "7"), split("n,n", record));
+        // Going into something that isn't a container, or past the end of an array, finds nothing
+        assertEquals(List.of("", "", ""), split("n.x,tags.9,user.id.x", record));
+    }
+
+    @Test
+    public void testStrings(){
+        String record = "{\"s\": \"tab\\there \\\"quoted\\\" \\u00e9\\\\\", \"k\\\"ey\": 1, \"e\": \"\"}";
+        assertEquals(List.of("tab\there \"quoted\" \u00e9\\", "1", ""), split("s,k\"ey,e", record));
+        // Brackets inside strings don't confuse skipping
+        assertEquals(List.of("2"), split("b", "{\"a\": {\"x\": \"}]{[\"}, \"b\": 2}"));
+    }
+
+    @Test
+    public void testBlankRecord(){
+        assertEquals(List.of(), split("a,b", ""));
+        assertEquals(List.of(), split("a,b", "  \t"));
+        assertEquals(List.of("", ""), split("a,b", "{}"));
+    }
+
+    @Test
+    public void testMalformed(){
+        assertMalformed("a", "[1, 2]"); // Has to be an object
+        assertMalformed("a", "{\"a\": 1");
+        assertMalformed("a", "{\"a\": \"unclosed}");
+        assertMalformed("a", "{\"a\" 1}");
+        assertMalformed("a", "{a: 1}");
+        assertMalformed("a", "{\"a\": 1} trailing");
+        assertMalformed("a", "{\"a\": 1,}");
+        assertMalformed("a", "{\"a\": \"\\u12\"}");
+        assertMalformed("b", "{\"a\": {\"x\": [1, 2}, \"b\": 1"); // Unclosed, in a part nobody asked for
+        assertMalformed("b", "{\"a\": {\"x\": \"unclosed}}");
+        assertMalformed("a.b", "{\"a\": {\"b\": }}");
+    }
+
+    @Test
+    public void testBadPaths(){
+        assertThrows(IllegalArgumentException.class, () -> new JsonFieldSplitter("a,,b"));
+        assertThrows(IllegalArgumentException.class, () -> new JsonFieldSplitter(""));
+    }
+
+    @Test
+    public void testSkip(){
+        JsonFieldSplitter splitter = new JsonFieldSplitter("a,b.c,d");
+        splitter.reset("{\"d\": 3, \"b\": {\"c\": 2}, \"a\": 1}");
+        assertTrue(splitter.skip());
+        assertEquals("2", splitter.next().toString());
+        assertEquals("3", splitter.next().toString());
+        assertFalse(splitter.skip());
+
+        // Reused for the next record, nothing carries over
+        splitter.reset("{\"a\": 9}");
+        assertEquals("9", splitter.next().toString());
+        assertEquals("", splitter.next().toString());
+        assertEquals("", splitter.next().toString());
+        assertNull(splitter.next());
+    }
+}
@@ -275,6 +275,14 @@ public class Lexer {
                         case '\"' -> literal.append('\"');
                         default -> literal.append("\\").append(c);
                     }
+                }else if(c >= '0' && c <= '7'){ // octal escape, up to 3 digits, like \0
+                    lineCol[COL]++;
+                    int code = c - '0';
+                    for(int digits = 1; digits < 3 && inputReader.untilDone() > 0 && (c = inputReader.peekString(1).charAt(0)) >= '0' && c <= '7'; digits++){
+                        code = code * 8 + (inputReader.getChar() - '0');
+                        lineCol[COL]++;
+                    }
+                    literal.append((char) code);
                 }else{
                     lineCol[COL]++;
                     literal.append(c);
@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Memory-maps the input and hands out records as views over the mapped bytes, so reading a line doesn't decode or copy anything.
+// A single MappedByteBuffer tops out at 2 GB, so big files get mapped one window at a time,
+// and a record that runs off the end of a window just causes a remap starting at that record.
+// Only lines can be found this way. If RS changes to anything else partway through, the rest of the file is streamed
+// from where the last record ended (see setRecordSeparator).
+public class MappedRecordSource implements RecordSource {
+    public static final long WINDOW_SIZE = 1L << 30; // 1 GB per mapping
+
+    private final FileChannel channel;
+    private final long size;
+    private final long windowSize;
+    private MappedByteBuffer window;
+    private long windowStart; // File offset that window index 0 corresponds to
+    private int position; // Next unread byte in the window
+    private boolean skipLineFeed; // The last record ended on a \r at the very end of a window, if the next byte is \n it belongs to that
+    private StreamRecordSource rest; // Reads the rest of the file once RS isn't a newline any more, null until then
+
+    public MappedRecordSource(Path path) throws IOException {
+        this(path, WINDOW_SIZE);
+    }
+
+    // Window size is adjustable mostly so the remapping can be tested without a multi-GB file
+    public MappedRecordSource(Path path, long windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = Math.min(windowSize, Integer.MAX_VALUE);
+        map(0);
+    }
+
+    private void map(long offset) throws IOException {
+        windowStart = offset;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, size - offset));
+        position = 0;
+    }
+
+    // True if the window doesn't reach the end of the file yet
+    private boolean moreToMap(){
+        return windowStart + window.limit() < size;
+    }
+
+    @Override
+    public CharSequence nextRecord() throws IOException {
+        if(rest != null)
+            return rest.nextRecord();
+        if(skipLineFeed){
+            skipLineFeed = false;
+            if(position == window.limit() && moreToMap())
+                map(windowStart + position);
+            if(position < window.limit() && window.get(position) == '\n')
+                position++;
+        }
+        if(windowStart + position >= size)
+            return null;
+
+        int start = position;
+        int i = start;
+        boolean ascii = true;
+        byte b;
+        while(true){
+            if(i == window.limit() || (window.get(i) == '\r' && i + 1 == window.limit() && moreToMap())){
+            // Ran off the window (or a \r\n got cut in half), so slide the window up to where this record starts
+                if(!moreToMap())
+                    break; // Last record in the file, no terminator
+                if(start == 0){
+                    if(i < window.limit()){
+                        // The record fits, only its \r\n doesn't. Whether there's a \n gets checked once the next window is mapped
+                        skipLineFeed = true;
+                        break;
+                    }
+                    throw new IOException("Record is longer than the %d byte mapping window".formatted(windowSize));
+                }
+                i -= start;
+                map(windowStart + start);
+                start = 0;
+                continue;
+            }
+            b = window.get(i);
+            if(b == '\n' || b == '\r')
+                break;
+            if(b < 0) // High bit set, not plain ASCII
+                ascii = false;
+            i++;
+        }
+
+        int end = i;
+        // Skip over the terminator, same line endings BufferedReader.readLine accepts (\n, \r, \r\n)
+        if(i < window.limit()){
+            if(window.get(i) == '\r' && i + 1 < window.limit() && window.get(i + 1) == '\n')
+                i++;
+            i++;
+        }
+        position = i;
+
+        if(ascii)
+            return new RecordView(window, start, end - start);
+        // Multibyte characters can't be indexed byte by byte, those records get decoded properly
+        byte[] bytes = new byte[end - start];
+        window.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Anything but a newline RS hands the rest of the file over to a StreamRecordSource, starting right after the last record.
+    // It stays streamed from then on, even if RS goes back to a newline
+    @Override
+    public void setRecordSeparator(RecordSeparator separator){
+        if(rest == null && separator.getKind() == RecordSeparator.Kind.LINE)
+            return;
+        try {
+            if(rest == null){
+                long offset = windowStart + position;
+                if(skipLineFeed){
+                    ByteBuffer next = ByteBuffer.allocate(1);
+                    if(channel.read(next, offset) == 1 && next.get(0) == '\n')
+                        offset++;
+                    skipLineFeed = false;
+                }
+                window = null; // Nothing hands out views into it any more, so the mapping can go
+                rest = new StreamRecordSource(Channels.newReader(channel.position(offset), StandardCharsets.UTF_8.newDecoder(), -1));
+            }
+        } catch(IOException e){
+            throw new UncheckedIOException("Could not switch to streaming the rest of the file", e);
+        }
+        rest.setRecordSeparator(separator);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // A read-only window onto an ASCII record sitting in the mapped file.
+    // Only turns into a real String when somebody calls toString.
+    public static class RecordView implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+
+        public RecordView(ByteBuffer bytes, int offset, int length){
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length(){
+            return length;
+        }
+
+        @Override
+        public char charAt(int index){
+            if(index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("Index %d out of bounds for record of length %d".formatted(index, length));
+            return (char) bytes.get(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end){
+            if(start < 0 || end > length || start > end)
+                throw new IndexOutOfBoundsException("Range [%d, %d) out of bounds for record of length %d".formatted(start, end, length));
+            return new RecordView(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString(){
+            byte[] copy = new byte[length];
+            bytes.get(offset, copy);
+            return new String(copy, StandardCharsets.ISO_8859_1); // ASCII only, so this is a straight copy
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappedRecordSourceTest {
+
+    private static Path write(String contents) throws IOException {
+        Path file = Files.createTempFile("mapped", ".txt");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, contents, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<String> readAll(Path file, long windowSize) throws IOException {
+        List<String> records = new ArrayList<>();
+        try(MappedRecordSource source = new MappedRecordSource(file, windowSize)){
+            CharSequence record;
+            while((record = source.nextRecord()) != null)
+                records.add(record.toString());
+        }
+        return records;
+    }
+
+    @Test
+    public void testWindowRemapping() throws IOException {
+        // Records of every length up to a bit past the smallest window, so they end on, just before and just after each window boundary
+        StringBuilder contents = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for(int i = 0; i < 60; i++){
+            String record = "r%d-%s".formatted(i, "x".repeat(i % 11));
+            expected.add(record);
+            contents.append(record).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        Path file = write(contents.toString());
+
+        for(long windowSize : new long[]{16, 20, 33, MappedRecordSource.WINDOW_SIZE})
+            assertEquals("window of %d bytes".formatted(windowSize), expected, readAll(file, windowSize));
+    }
+
+    @Test
+    public void testCarriageReturnAtWindowEdge() throws IOException {
+        // "abcdefghijklmno\r" is exactly one 16 byte window, the \n after it is in the next one.
+        // It's still one line ending, not an empty record in between
+        Path file = write("abcdefghijklmno\r\nnext\rlast");
+        assertEquals(List.of("abcdefghijklmno", "next", "last"), readAll(file, 16));
+    }
+
+    @Test
+    public void testLastRecordWithoutTerminator() throws IOException {
+        assertEquals(List.of("one", "two"), readAll(write("one\ntwo"), 16));
+        assertEquals(List.of("one", "two"), readAll(write("one\ntwo\n"), 16));
+        assertEquals(List.of(), readAll(write(""), 16));
+    }
+
+    @Test
+    public void testRecordLongerThanWindow() throws IOException {
+        Path file = write("short\n" + "y".repeat(40) + "\n");
+        try(MappedRecordSource source = new MappedRecordSource(file, 16)){
+            assertEquals("short", source.nextRecord().toString());
+            assertThrows(IOException.class, source::nextRecord);
+        }
+    }
+
+    @Test
+    public void testViews() throws IOException {
+        Path file = write("plain ascii\ncafé au lait\n");
+        try(MappedRecordSource source = new MappedRecordSource(file)){
+            CharSequence ascii = source.nextRecord();
+            assertTrue(ascii instanceof MappedRecordSource.RecordView); // Nothing copied
+            assertEquals("ascii", ascii.subSequence(6, 11).toString());
+            assertEquals('p', ascii.charAt(0));
+
+            CharSequence multibyte = source.nextRecord();
+            assertEquals("café au lait", multibyte.toString()); // Decoded, not byte by byte
+            assertNull(source.nextRecord());
+        }
+    }
+
+    @Test
+    public void testFieldsStayViews() throws IOException {
+        // A field only gets copied into a String once something needs one, comparing it as a number doesn't
+        Path file = write("alpha 42\n");
+        try(MappedRecordSource source = new MappedRecordSource(file)){
+            FieldSplitter splitter = FieldSplitter.compile(" ");
+            splitter.reset(source.nextRecord());
+            splitter.skip();
+            CharSequence field = splitter.next();
+            assertTrue(field instanceof MappedRecordSource.RecordView);
+
+            InterpreterDataType value = new InterpreterDataType(field);
+            assertEquals(42, value.getNumber(), 0);
+            assertSame(field, value.getText());
+            assertEquals("42", value.getValue());
+        }
+    }
+
+    // RS changing partway through the file carries on streaming from right after the last record
+    @Test
+    public void testSeparatorChange() throws IOException {
+        Path file = write("first\r\na;b\nc;d\n");
+        for(long windowSize : new long[]{6, 16, MappedRecordSource.WINDOW_SIZE}){ // 6 leaves the \n of the \r\n in the next window
+            try(MappedRecordSource source = new MappedRecordSource(file, windowSize)){
+                assertEquals("first", source.nextRecord().toString());
+                source.setRecordSeparator(RecordSeparator.compile(";"));
+                assertEquals("a", source.nextRecord().toString());
+                assertEquals("b\nc", source.nextRecord().toString());
+                source.setRecordSeparator(RecordSeparator.NEWLINE); // Back to lines, still streamed
+                assertEquals("d", source.nextRecord().toString());
+                assertNull(source.nextRecord());
+            }
+        }
+
+        // A newline RS to begin with doesn't change anything
+        try(MappedRecordSource source = new MappedRecordSource(file)){
+            source.setRecordSeparator(RecordSeparator.NEWLINE);
+            assertTrue(source.nextRecord() instanceof MappedRecordSource.RecordView);
+        }
+    }
+
+    @Test
+    public void testSeparatorChangeInProgram() throws IOException {
+        Path file = write("one\ntwo;three\nfour;five\n");
+        ProgramNode program = new Parser(new Lexer("BEGIN { seen = \"\" } NR == 1 { RS = \";\" } { seen = seen \"[\" $0 \"]\" }").lex()).parse();
+        new Interpreter(program, List.of(file), new HashMap<>(), true, false).interpretProgram();
+        assertEquals(new InterpreterDataType("[one][two][three\nfour][five\n]"), Interpreter.getGlobalVariable("seen").orElseThrow());
+    }
+
+    // Whatever a script keeps (in a variable, an array, a function argument) gets copied out of the mapping,
+    // it has to stay the same once later records have been read, and mustn't keep the window alive
+    @Test
+    public void testKeptFieldsAreCopied() throws IOException {
+        Path file = write("a 1\nb 2\nc 3\nd 4\n");
+        ProgramNode program = new Parser(new Lexer("NR == 1 { first = $2; whole = $0 } NR == 2 { getline line } { seen[$1] = $2 }").lex()).parse();
+        new Interpreter(program, List.of(file), new HashMap<>(), true, false).interpretProgram();
+
+        InterpreterDataType first = Interpreter.getGlobalVariable("first").orElseThrow();
+        assertTrue(first.getText() instanceof String);
+        assertEquals("1", first.getValue());
+        assertTrue(first.isStrnum()); // Still came from input
+        InterpreterDataType whole = Interpreter.getGlobalVariable("whole").orElseThrow();
+        assertTrue(whole.getText() instanceof String);
+        assertEquals("a 1", whole.getValue());
+        InterpreterDataType line = Interpreter.getGlobalVariable("line").orElseThrow();
+        assertTrue(line.getText() instanceof String);
+        assertEquals("c 3", line.getValue());
+
+        InterpreterArrayDataType seen = (InterpreterArrayDataType) Interpreter.getGlobalVariable("seen").orElseThrow();
+        assertEquals(3, seen.size());
+        for(String[] expected : new String[][]{{"a", "1"}, {"b", "2"}, {"d", "4"}}){
+            InterpreterDataType value = seen.get(new InterpreterDataType(expected[0]));
+            assertTrue(value.getText() instanceof String);
+            assertEquals(expected[1], value.getValue());
+        }
+    }
+}
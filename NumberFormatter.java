@@ -0,0 +1,184 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Turns non-integral numbers into strings for CONVFMT and OFMT (integers never get here, they're always printed as integers).
+// The formats scripts actually use, %.Ng, %.Nf and %.Ne (both default to %.6g), are done by hand the way C's printf does them,
+// rounding the exact binary value half-even. Anything fancier (flags, widths...) goes to String.format, with the number
+// cut down to a long for the integer conversions (%d, %i, %o, %x, %X, %u) the way printf does it.
+public final class NumberFormatter {
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final HashMap<String, NumberFormatter> COMPILED = new HashMap<>();
+    private static final Pattern SPECIFIER = Pattern.compile("%[-+ #0]*\\d*(?:\\.\\d*)?([a-zA-Z%])");
+
+    private final String format; // What String.format gets, C's %i and %u are Java's %d
+    private final char conversion; // 'g', 'f' or 'e', or 0 for String.format
+    private final int precision;
+    private final boolean integral; // The first conversion wants a whole number
+
+    private NumberFormatter(String format){
+        char conversion = 0;
+        int precision = 6;
+        // %g, %.Ng and friends, nothing else in the format
+        if(format.length() >= 2 && format.charAt(0) == '%' && "gfe".indexOf(format.charAt(format.length() - 1)) != -1){
+            String middle = format.substring(1, format.length() - 1);
+            if(middle.isEmpty())
+                conversion = format.charAt(format.length() - 1);
+            else if(middle.length() <= 3 && middle.charAt(0) == '.' && middle.chars().skip(1).allMatch(Character::isDigit)){
+                conversion = format.charAt(format.length() - 1);
+                precision = middle.length() == 1 ? 0 : Integer.parseInt(middle.substring(1));
+            }
+        }
+        this.conversion = conversion;
+        this.precision = precision;
+
+        // String.format won't take a double for an integer conversion
+        boolean integral = false;
+        StringBuilder rewritten = new StringBuilder();
+        Matcher matcher = SPECIFIER.matcher(format);
+        boolean first = true;
+        while(matcher.find()){
+            char specifier = format.charAt(matcher.end() - 1);
+            if(specifier == '%')
+                continue;
+            if(first)
+                integral = "diouxX".indexOf(specifier) != -1;
+            first = false;
+            if(specifier == 'i' || specifier == 'u')
+                matcher.appendReplacement(rewritten, Matcher.quoteReplacement(matcher.group().substring(0, matcher.group().length() - 1) + "d"));
+        }
+        matcher.appendTail(rewritten);
+        this.format = rewritten.toString();
+        this.integral = integral;
+    }
+
+    // Formats are only compiled once, scripts rarely use more than one or two
+    public static NumberFormatter of(String format){
+        NumberFormatter formatter = COMPILED.get(format);
+        if(formatter == null){
+            if(COMPILED.size() > 64)
+                COMPILED.clear(); // Someone's building formats on the fly, don't hang on to all of them
+            formatter = new NumberFormatter(format);
+            COMPILED.put(format, formatter);
+        }
+        return formatter;
+    }
+
+    public String format(double number){
+        if(Double.isNaN(number))
+            return "nan";
+        if(Double.isInfinite(number))
+            return number > 0 ? "inf" : "-inf";
+        return switch(conversion){
+            case 'g' -> formatGeneral(number);
+            case 'f' -> formatFixed(number);
+            case 'e' -> formatExponent(number, precision, false);
+            default -> integral ? String.format(format, (long) number) : String.format(format, number);
+        };
+    }
+
+    private String formatGeneral(double number){
+        int significant = Math.max(precision, 1);
+        if(number == 0)
+            return sign(number) + "0";
+        Digits digits = round(Math.abs(number), significant);
+        if(digits.exponent < -4 || digits.exponent >= significant)
+            return formatExponent(number, significant - 1, true);
+        // Plain decimal, with the digits after the point trimmed of trailing zeros
+        return sign(number) + stripZeros(layoutFixed(digits.digits, significant - 1 - digits.exponent));
+    }
+
+    private String formatFixed(double number){
+        double magnitude = Math.abs(number);
+        String digits;
+        double scaled = magnitude * (precision < POWERS_OF_TEN.length ? POWERS_OF_TEN[precision] : Double.POSITIVE_INFINITY);
+        if(precision < POWERS_OF_TEN.length && scaled < 1e15 && !nearHalf(scaled))
+            digits = Long.toString(Math.round(scaled));
+        else
+            digits = new BigDecimal(magnitude).setScale(precision, RoundingMode.HALF_EVEN).unscaledValue().toString();
+        return sign(number) + layoutFixed(digits, precision);
+    }
+
+    // d.ddde+XX, at least two exponent digits like C. %g drops the trailing zeros, %e keeps them
+    private String formatExponent(double number, int decimals, boolean trimZeros){
+        if(number == 0){
+            String zero = decimals == 0 ? "0" : "0." + "0".repeat(decimals);
+            return sign(number) + (trimZeros ? "0" : zero) + "e+00";
+        }
+        Digits digits = round(Math.abs(number), decimals + 1);
+        String mantissa = digits.digits.substring(0, 1);
+        if(decimals > 0)
+            mantissa += "." + digits.digits.substring(1);
+        if(trimZeros)
+            mantissa = stripZeros(mantissa);
+        int exponent = Math.abs(digits.exponent);
+        return sign(number) + mantissa + (digits.exponent < 0 ? "e-" : "e+") + (exponent < 10 ? "0" : "") + exponent;
+    }
+
+    // The number rounded to this many significant digits, and the power of ten of the first one
+    private record Digits(String digits, int exponent){}
+
+    private static Digits round(double magnitude, int significant){
+        int exponent = (int) Math.floor(Math.log10(magnitude));
+        int scale = significant - 1 - exponent;
+        if(significant <= 15 && Math.abs(scale) < POWERS_OF_TEN.length){
+            double scaled = scale >= 0 ? magnitude * POWERS_OF_TEN[scale] : magnitude / POWERS_OF_TEN[-scale];
+            // log10 can be off by one right around powers of ten, and a value too close to .5 could round either way,
+            // both of those go the exact (slow) way below
+            if(!nearHalf(scaled)){
+                long rounded = Math.round(scaled);
+                long low = (long) POWERS_OF_TEN[significant - 1];
+                if(rounded >= low && rounded < low * 10)
+                    return new Digits(Long.toString(rounded), exponent);
+                if(rounded == low * 10)
+                    return new Digits(Long.toString(low), exponent + 1); // 9.9999 rounded up to 10
+            }
+        }
+        BigDecimal exact = new BigDecimal(magnitude).round(new MathContext(significant, RoundingMode.HALF_EVEN));
+        String digits = exact.unscaledValue().toString();
+        int digitsExponent = digits.length() - 1 - exact.scale();
+        // Pad or trim so there are exactly significant digits (trailing zeros can get dropped from the unscaled value)
+        if(digits.length() < significant)
+            digits = digits + "0".repeat(significant - digits.length());
+        else if(digits.length() > significant)
+            digits = digits.substring(0, significant);
+        return new Digits(digits, digitsExponent);
+    }
+
+    // True if the fraction is close enough to .5 that the error in scaling could change which way it rounds
+    private static boolean nearHalf(double scaled){
+        double fraction = scaled - Math.floor(scaled);
+        return Math.abs(fraction - 0.5) < 1e-6;
+    }
+
+    // digits with the decimal point put decimals places from the right
+    private static String layoutFixed(String digits, int decimals){
+        if(decimals <= 0)
+            return digits + "0".repeat(-decimals);
+        if(digits.length() <= decimals)
+            digits = "0".repeat(decimals - digits.length() + 1) + digits;
+        int point = digits.length() - decimals;
+        return digits.substring(0, point) + "." + digits.substring(point);
+    }
+
+    private static String stripZeros(String number){
+        if(number.indexOf('.') == -1)
+            return number;
+        int end = number.length();
+        while(number.charAt(end - 1) == '0')
+            end--;
+        if(number.charAt(end - 1) == '.')
+            end--;
+        return number.substring(0, end);
+    }
+
+    private static String sign(double number){
+        return number < 0 || (number == 0 && 1 / number < 0) ? "-" : "";
+    }
+}
@@ -0,0 +1,123 @@
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class NumberFormatterTest {
+
+    // Format, value, and what C's printf makes of it (the double, not the long double bash's printf uses)
+    private static final String[][] EXPECTED = {
+        {"%.6g", "0.1", "0.1"},
+        {"%.6g", "123456.5", "123456"},
+        {"%.6g", "1234567", "1.23457e+06"},
+        {"%.6g", "0.0001", "0.0001"},
+        {"%.6g", "0.00001234", "1.234e-05"},
+        {"%.6g", "1e-5", "1e-05"},
+        {"%.6g", "-3.14159265", "-3.14159"},
+        {"%.6g", "1e100", "1e+100"},
+        {"%.6g", "0.000123456789", "0.000123457"},
+        {"%.6g", "99999.95", "99999.9"}, // Really 99999.949999..., so it rounds down
+        {"%.6g", "999999.5", "1e+06"}, // Rounds up into the next power of ten, which tips it into exponent form
+        {"%.6g", "100000", "100000"},
+        {"%.6g", "-0.0", "-0"},
+        {"%g", "0.5", "0.5"},
+        {"%.1g", "0.15", "0.1"},
+        {"%.1g", "0.25", "0.2"}, // Exactly half, goes to even
+        {"%.0g", "123", "1e+02"}, // No precision is one significant digit
+        {"%.10g", "0.3333333333333333", "0.3333333333"},
+        {"%.17g", "0.1", "0.10000000000000001"},
+        {"%.17g", "2.675", "2.6749999999999998"},
+        {"%.2f", "0.125", "0.12"},
+        {"%.2f", "0.375", "0.38"},
+        {"%.2f", "2.675", "2.67"},
+        {"%.2f", "-1.005", "-1.00"},
+        {"%.0f", "0.5", "0"},
+        {"%.0f", "1.5", "2"},
+        {"%.0f", "2.5", "2"},
+        {"%.0f", "-2.5", "-2"},
+        {"%.3f", "1e-10", "0.000"},
+        {"%f", "123456789.123456789", "123456789.123457"},
+        {"%f", "1e100", "10000000000000000159028911097599180468360808563945281389781327557747838772170381060813469985856815104.000000"},
+        {"%.3e", "0", "0.000e+00"},
+        {"%.3e", "123456", "1.235e+05"},
+        {"%.0e", "15000", "2e+04"},
+        {"%e", "1e-300", "1.000000e-300"},
+        {"%.2e", "9.995", "9.99e+00"},
+        {"%e", "-2.5e-7", "-2.500000e-07"},
+    };
+
+    @Test
+    public void testFormats(){
+        for(String[] expected : EXPECTED)
+            assertEquals(expected[0] + " " + expected[1], expected[2], NumberFormatter.of(expected[0]).format(Double.parseDouble(expected[1])));
+    }
+
+    @Test
+    public void testNotFinite(){
+        for(String format : new String[]{"%.6g", "%.2f", "%e", "%5.1f"}){
+            NumberFormatter formatter = NumberFormatter.of(format);
+            assertEquals("nan", formatter.format(Double.NaN));
+            assertEquals("inf", formatter.format(Double.POSITIVE_INFINITY));
+            assertEquals("-inf", formatter.format(Double.NEGATIVE_INFINITY));
+        }
+    }
+
+    @Test
+    public void testOtherFormats(){
+        // Widths, flags and the rest aren't done by hand, String.format gets them
+        assertEquals(" 3.14", NumberFormatter.of("%5.2f").format(3.14159));
+        assertEquals("+3.1", NumberFormatter.of("%+.1f").format(3.14159));
+        assertEquals("x=3.142", NumberFormatter.of("x=%.3f").format(3.14159));
+        assertEquals("3.1416E+00", NumberFormatter.of("%.4E").format(3.14159));
+    }
+
+    // Integer conversions get the number cut down to a whole one first, like printf does, instead of String.format throwing
+    @Test
+    public void testIntegerFormats(){
+        assertEquals("3", NumberFormatter.of("%d").format(3.7));
+        assertEquals("-3", NumberFormatter.of("%d").format(-3.7));
+        assertEquals("3", NumberFormatter.of("%i").format(3.7));
+        assertEquals("3", NumberFormatter.of("%u").format(3.7));
+        assertEquals("ff", NumberFormatter.of("%x").format(255.5));
+        assertEquals("FF", NumberFormatter.of("%X").format(255.5));
+        assertEquals("17", NumberFormatter.of("%o").format(15.2));
+        assertEquals("n=  12%", NumberFormatter.of("n=%4i%%").format(12.25));
+        assertEquals("nan", NumberFormatter.of("%d").format(Double.NaN));
+    }
+
+    @Test
+    public void testCompiledOnce(){
+        assertSame(NumberFormatter.of("%.6g"), NumberFormatter.of("%.6g"));
+        assertNotSame(NumberFormatter.of("%.6g"), NumberFormatter.of("%.5g"));
+        // Lots of different formats don't stop any of them working
+        for(int i = 0; i < 200; i++)
+            assertEquals("1." + "0".repeat(i % 20 + 1), NumberFormatter.of("%." + (i % 20 + 1) + "f").format(1));
+    }
+
+    // CONVFMT turns numbers into strings, OFMT is only for printing them, and integers never use either
+    @Test
+    public void testConvfmtAndOfmt(){
+        new Interpreter(new Parser(new Lexer("BEGIN { x = 1 }").lex()).parse(), new HashMap<>(Map.of("CONVFMT", "%.2f", "OFMT", "%.1f")));
+        InterpreterDataType pi = new InterpreterDataType(3.14159);
+        assertEquals("3.14", pi.getValue());
+        assertEquals("3.1", pi.getOutputValue());
+        assertEquals("42", new InterpreterDataType(42.0).getValue());
+        assertEquals("42", new InterpreterDataType(42.0).getOutputValue());
+        assertEquals("-100000000000000000000.00", new InterpreterDataType(-1e20).getValue()); // Integral, but too big for a long
+        // Strings are printed as they are, even ones that look like numbers
+        assertEquals("3.14159", new InterpreterDataType("3.14159").getOutputValue());
+
+        // A string made under one CONVFMT gets remade once CONVFMT changes
+        new Interpreter(new Parser(new Lexer("BEGIN { x = 1 }").lex()).parse(), new HashMap<>(Map.of("CONVFMT", "%.4f")));
+        assertEquals("3.1416", pi.getValue());
+        assertEquals("3.14159", pi.getOutputValue()); // OFMT is back to the default
+
+        // An integer CONVFMT just truncates
+        new Interpreter(new Parser(new Lexer("BEGIN { x = 1 }").lex()).parse(), new HashMap<>(Map.of("CONVFMT", "%d", "OFMT", "%x")));
+        assertEquals("3", pi.getValue());
+        assertEquals("3", pi.getOutputValue());
+        assertEquals("a", new InterpreterDataType(10.5).getOutputValue());
+    }
+}
@@ -0,0 +1,132 @@
+// Reads numbers out of strings the way AWK does, without Double.parseDouble and its exceptions.
+// A string "looks numeric" (a strnum) if, ignoring blanks around it, it's an optional sign, digits with an optional
+// decimal point, and an optional exponent. Anything else still has a numeric value: whatever number it starts with
+// (after leading blanks), or 0 if it doesn't start with one. So "12abc" is 12 and "GET" is 0, and neither throws.
+public final class NumericString {
+    // Exact powers of ten, anything up to 10^22 fits a double without rounding
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final CharSequence string;
+    private double value;
+    private boolean numeric;
+
+    private NumericString(CharSequence string){
+        this.string = string;
+        scan();
+    }
+
+    // Scans once, for when both the value and whether it looked numeric are needed (InterpreterDataType caches both)
+    public static NumericString scan(CharSequence string){
+        return new NumericString(string);
+    }
+
+    public static boolean looksNumeric(CharSequence string){
+        return new NumericString(string).numeric;
+    }
+
+    public static double valueOf(CharSequence string){
+        return new NumericString(string).value;
+    }
+
+    public double getValue(){
+        return value;
+    }
+
+    public boolean isNumeric(){
+        return numeric;
+    }
+
+    private void scan(){
+        int length = string.length();
+        int i = 0;
+        while(i < length && isBlank(string.charAt(i)))
+            i++;
+
+        int start = i;
+        boolean negative = false;
+        if(i < length && (string.charAt(i) == '+' || string.charAt(i) == '-')){
+            negative = string.charAt(i) == '-';
+            i++;
+        }
+
+        // Mantissa, kept as a long while it's small enough to be exact
+        long mantissa = 0;
+        int significantDigits = 0;
+        int decimalShift = 0; // Power of ten the mantissa has to be scaled by
+        boolean digits = false;
+        boolean exact = true;
+        for(; i < length && isDigit(string.charAt(i)); i++){
+            digits = true;
+            if(significantDigits < 18){
+                mantissa = mantissa * 10 + (string.charAt(i) - '0');
+                if(mantissa != 0)
+                    significantDigits++;
+            } else {
+                decimalShift++; // Too many digits to keep, the fallback below gets it right
+                exact = false;
+            }
+        }
+        if(i < length && string.charAt(i) == '.'){
+            i++;
+            for(; i < length && isDigit(string.charAt(i)); i++){
+                digits = true;
+                if(significantDigits < 18){
+                    mantissa = mantissa * 10 + (string.charAt(i) - '0');
+                    if(mantissa != 0)
+                        significantDigits++;
+                    decimalShift--;
+                } else
+                    exact = false;
+            }
+        }
+        if(!digits){
+            value = 0; // Doesn't start with a number at all, not even the sign or the dot count
+            numeric = false;
+            return;
+        }
+
+        int exponent = 0;
+        if(i < length && (string.charAt(i) == 'e' || string.charAt(i) == 'E')){
+            // Only part of the number if digits follow, "1e" is just 1 with some junk after it
+            int j = i + 1;
+            boolean negativeExponent = false;
+            if(j < length && (string.charAt(j) == '+' || string.charAt(j) == '-')){
+                negativeExponent = string.charAt(j) == '-';
+                j++;
+            }
+            if(j < length && isDigit(string.charAt(j))){
+                for(; j < length && isDigit(string.charAt(j)); j++)
+                    if(exponent < 10000) // Way past what a double can hold either way
+                        exponent = exponent * 10 + (string.charAt(j) - '0');
+                if(negativeExponent)
+                    exponent = -exponent;
+                i = j;
+            }
+        }
+        int end = i;
+
+        // Trailing blanks are fine, anything else means it's a number followed by junk
+        while(i < length && isBlank(string.charAt(i)))
+            i++;
+        numeric = i == length;
+
+        int scale = decimalShift + exponent;
+        if(exact && significantDigits <= 15 && Math.abs(scale) <= 22){
+            // Both the mantissa and the power of ten are exact, so one multiply/divide rounds correctly
+            double result = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+            value = negative ? -result : result;
+        } else
+            value = Double.parseDouble(string.subSequence(start, end).toString()); // Already checked, so this can't throw
+    }
+
+    private static boolean isDigit(char c){
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isBlank(char c){
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
@@ -0,0 +1,118 @@
+import org.junit.Test;
+
+import java.nio.CharBuffer;
+
+import static org.junit.Assert.*;
+
+public class NumericStringTest {
+
+    private static void assertNumeric(double expected, String string){
+        NumericString scanned = NumericString.scan(string);
+        assertEquals(string, expected, scanned.getValue(), 0);
+        assertTrue(string, scanned.isNumeric());
+        assertTrue(string, NumericString.looksNumeric(string));
+        assertEquals(string, expected, NumericString.valueOf(string), 0);
+    }
+
+    // Still has a value, it just isn't a strnum
+    private static void assertNotNumeric(double expected, String string){
+        NumericString scanned = NumericString.scan(string);
+        assertEquals(string, expected, scanned.getValue(), 0);
+        assertFalse(string, scanned.isNumeric());
+        assertFalse(string, NumericString.looksNumeric(string));
+        assertEquals(string, expected, NumericString.valueOf(string), 0);
+    }
+
+    @Test
+    public void testIntegers(){
+        assertNumeric(0, "0");
+        assertNumeric(42, "42");
+        assertNumeric(-42, "-42");
+        assertNumeric(42, "+42");
+        assertNumeric(7, "007");
+        assertNumeric(42, "  42\t\n"); // Blanks either side are fine
+        assertNumeric(9007199254740993.0, "9007199254740993"); // Past 2^53, rounds like parseDouble would
+    }
+
+    @Test
+    public void testDecimals(){
+        assertNumeric(3.25, "3.25");
+        assertNumeric(0.5, ".5");
+        assertNumeric(5, "5.");
+        assertNumeric(-0.125, "-.125");
+        assertNumeric(0.1, "0.1");
+        assertNumeric(0.3, "0.3"); // Not 0.30000000000000004, the scaling has to be exact
+        assertNumeric(123456.789, "123456.789");
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(NumericString.valueOf("-0")));
+    }
+
+    @Test
+    public void testExponents(){
+        assertNumeric(1500, "1.5e3");
+        assertNumeric(1500, "1.5E+3");
+        assertNumeric(0.0015, "1.5e-3");
+        assertNumeric(1e300, "1e300");
+        assertNumeric(Double.POSITIVE_INFINITY, "1e99999");
+        assertNumeric(0, "1e-99999");
+        assertNumeric(4.9e-324, "4.9e-324");
+        // Without digits after it the e is junk, not an exponent
+        assertNotNumeric(1, "1e");
+        assertNotNumeric(1, "1e+");
+        assertNotNumeric(2, "2E-x");
+    }
+
+    @Test
+    public void testLongDigitStrings(){
+        // Too many digits to keep exactly, these go through the parseDouble fallback
+        for(String digits : new String[]{"123456789012345678901234567890", "0.1234567890123456789012345",
+                "3.14159265358979323846264338327950288", "98765432109876543210e-25", "1" + "0".repeat(400)})
+            assertNumeric(Double.parseDouble(digits), digits);
+        assertNumeric(1e-30, "0.000000000000000000000000000001");
+    }
+
+    @Test
+    public void testLeadingNumber(){
+        assertNotNumeric(12, "12abc");
+        assertNotNumeric(12, "  12 abc");
+        assertNotNumeric(-3.5, "-3.5kg");
+        assertNotNumeric(1.2, "1.2.3");
+        assertNotNumeric(0, "abc");
+        assertNotNumeric(0, "GET");
+        assertNotNumeric(0, "a12");
+        assertNotNumeric(0, "");
+        assertNotNumeric(0, "   ");
+        // A sign or a dot on its own isn't a number
+        assertNotNumeric(0, ".");
+        assertNotNumeric(0, "+");
+        assertNotNumeric(0, "-.");
+        assertNotNumeric(0, "+-1");
+        assertNotNumeric(0, "e5");
+    }
+
+    @Test
+    public void testNotDecimal(){
+        // Hex, and the words parseDouble takes, are only their leading digits here
+        assertNotNumeric(0, "0x1A");
+        assertNotNumeric(0, "nan");
+        assertNotNumeric(0, "inf");
+        assertNotNumeric(0, "Infinity");
+        assertNotNumeric(1, "1d");
+        assertNotNumeric(1, "1f");
+        assertNotNumeric(1, "1_000");
+    }
+
+    @Test
+    public void testViews(){
+        // Fields come in as views into the record, the scan can't look past either end of them
+        CharSequence record = "10 2.5e1 7x";
+        assertEquals(10, NumericString.valueOf(record.subSequence(0, 2)), 0);
+        assertTrue(NumericString.looksNumeric(record.subSequence(3, 8)));
+        assertEquals(25, NumericString.valueOf(record.subSequence(3, 8)), 0);
+        assertEquals(2.5, NumericString.valueOf(record.subSequence(3, 6)), 0);
+        assertFalse(NumericString.looksNumeric(record.subSequence(9, 11)));
+        assertTrue(NumericString.looksNumeric(record.subSequence(9, 10)));
+        CharBuffer buffer = CharBuffer.wrap("xx-4.5e2yy").subSequence(2, 8);
+        assertTrue(NumericString.looksNumeric(buffer));
+        assertEquals(-450, NumericString.valueOf(buffer), 0);
+    }
+}
@@ -0,0 +1,447 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+// Where a huge AWK array goes once ARRAYMEM is set (see InterpreterArrayDataType): keys and values are encoded into direct
+// ByteBuffers outside the Java heap, and all that stays on it is a small index, a hash and an offset per element.
+// The table is split into partitions by hash. Every off-heap table shares the one ARRAYMEM budget, and once that's used up
+// the partitions that went the longest without being touched get written out to temp files and dropped,
+// to be read back in the next time something needs them. Tables that are dropped without being cleared (a function's local
+// array, a variable assigned over) give their share back once the GC notices they're gone.
+public final class OffHeapTable implements ArrayTable {
+    private static final int PARTITION_BITS = 6;
+    private static final int INITIAL_PARTITION_BYTES = 1 << 16;
+    private static final int MAX_LOAD_PERCENT = 65;
+    private static final byte STRING = 0, NUMBER = 1, STRNUM = 2; // What a record's value is stored as
+
+    // Shared by every table, the budget is for all of them together
+    private static final ArrayList<Partition> resident = new ArrayList<>();
+    private static long residentBytes;
+    private static long clock; // Ticks on every partition access, the partition with the oldest tick is the coldest
+    // Buffers from spilled or compacted partitions. A direct buffer's memory only goes back when the GC gets around to it,
+    // and a partition going out usually means another is coming in, so a few get kept for the next one
+    private static final ArrayList<ByteBuffer> spare = new ArrayList<>();
+    private static final int MAX_SPARE = 8;
+    // Tables still around. Once one's only reachable through here its Owner turns up in dropped, and its partitions get freed
+    private static final HashSet<Owner> owners = new HashSet<>();
+    private static final ReferenceQueue<OffHeapTable> dropped = new ReferenceQueue<>();
+
+    private final Partition[] partitions = new Partition[1 << PARTITION_BITS];
+    private final Owner owner;
+    private int size;
+
+    // Holds on to the partitions, not the table, so it can still free them after the table's gone
+    private static final class Owner extends WeakReference<OffHeapTable> {
+        final Partition[] partitions;
+
+        Owner(OffHeapTable table){
+            super(table, dropped);
+            partitions = table.partitions;
+        }
+    }
+
+    // One slice of the table. Each record in data is: key length, key (UTF-8), a STRING/NUMBER/STRNUM tag, then either
+    // the double or the string's length and bytes. Records are only ever appended, replaced and removed ones
+    // are left behind as garbage until compacting gets rid of them
+    private static final class Partition {
+        int[] hashes = new int[16];
+        int[] offsets = new int[16]; // Where the slot's record starts, plus one. 0 is an empty slot
+        int mask = 15;
+        int shift = 28;
+        int count;
+        ByteBuffer data; // null while spilled
+        int end; // Bytes in use
+        int garbage; // Bytes of dead records
+        int capacity; // Size of data, remembered while spilled so it comes back the same size
+        Path spillFile; // Made the first time the partition spills, and reused after that
+        boolean spillFileCurrent; // The file still matches data, spilling again doesn't need to write anything
+        long lastUse;
+    }
+
+    public OffHeapTable(){
+        owner = new Owner(this);
+        owners.add(owner);
+    }
+
+    @Override
+    public InterpreterDataType get(String key){
+        int hash = key.hashCode();
+        Partition partition = partitions[partitionOf(hash)];
+        if(partition == null)
+            return null;
+        use(partition);
+        int slot = find(partition, hash, encode(key));
+        return slot == -1 ? null : readValue(partition.data, partition.offsets[slot] - 1);
+    }
+
+    @Override
+    public void put(String key, InterpreterDataType value){
+        int hash = key.hashCode();
+        int index = partitionOf(hash);
+        Partition partition = partitions[index];
+        if(partition == null)
+            partition = partitions[index] = create();
+        use(partition);
+        byte[] keyBytes = encode(key);
+        int slot = find(partition, hash, keyBytes);
+        int record = append(partition, keyBytes, value); // Compacting can move records, but never slots, so slot still holds
+        if(slot != -1){
+            partition.garbage += recordLength(partition.data, partition.offsets[slot] - 1);
+            partition.offsets[slot] = record + 1;
+            return;
+        }
+        int i = home(partition, hash);
+        while(partition.offsets[i] != 0)
+            i = (i + 1) & partition.mask;
+        partition.hashes[i] = hash;
+        partition.offsets[i] = record + 1;
+        size++;
+        if(++partition.count > (partition.mask + 1) * MAX_LOAD_PERCENT / 100)
+            growIndex(partition);
+    }
+
+    @Override
+    public boolean remove(String key){
+        int hash = key.hashCode();
+        Partition partition = partitions[partitionOf(hash)];
+        if(partition == null)
+            return false;
+        use(partition);
+        int hole = find(partition, hash, encode(key));
+        if(hole == -1)
+            return false;
+        partition.garbage += recordLength(partition.data, partition.offsets[hole] - 1);
+        size--;
+        partition.count--;
+        // Same backward shift as StringHashTable, no tombstones
+        for(int i = (hole + 1) & partition.mask; partition.offsets[i] != 0; i = (i + 1) & partition.mask){
+            int distance = (i - home(partition, partition.hashes[i])) & partition.mask;
+            if(distance >= ((i - hole) & partition.mask)){
+                partition.hashes[hole] = partition.hashes[i];
+                partition.offsets[hole] = partition.offsets[i];
+                hole = i;
+            }
+        }
+        partition.offsets[hole] = 0;
+        return true;
+    }
+
+    // Frees everything the table holds, off the heap and on disk. It can't be used after this
+    public void release(){
+        owners.remove(owner);
+        owner.clear();
+        release(partitions);
+    }
+
+    private static void release(Partition[] partitions){
+        for(Partition partition : partitions){
+            if(partition == null)
+                continue;
+            if(partition.data != null){
+                recycle(partition.data);
+                partition.data = null;
+                resident.remove(partition);
+                residentBytes -= partition.capacity;
+            }
+            if(partition.spillFile != null){
+                try {
+                    Files.deleteIfExists(partition.spillFile);
+                } catch(IOException e){
+                    // It's a temp file and it's marked for deletion on exit anyway
+                }
+            }
+        }
+    }
+
+    // Frees whatever tables the GC has found unreachable since the last time
+    private static void releaseDropped(){
+        Reference<? extends OffHeapTable> reference;
+        while((reference = dropped.poll()) != null){
+            Owner owner = (Owner) reference;
+            if(owners.remove(owner)) // Not if it was released already
+                release(owner.partitions);
+        }
+    }
+
+    // Bytes of off-heap data all the tables are holding right now, spilled partitions don't count
+    public static long residentBytes(){
+        return residentBytes;
+    }
+
+    @Override
+    public int size(){
+        return size;
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, InterpreterDataType> action){
+        for(Partition partition : partitions){
+            if(partition == null)
+                continue;
+            for(int i = 0; i < partition.offsets.length; i++){
+                if(partition.offsets[i] == 0)
+                    continue;
+                use(partition); // The action might have pushed this one out
+                int record = partition.offsets[i] - 1;
+                int keyLength = partition.data.getInt(record);
+                byte[] key = new byte[keyLength];
+                partition.data.get(record + 4, key);
+                action.accept(new String(key, StandardCharsets.UTF_8), readValue(partition.data, record));
+            }
+        }
+    }
+
+    // A partition's elements are all read out when the loop gets to it. Removing shifts slots around and compacting moves
+    // records, so walking a partition's slots live could skip some. Later partitions are still read as they are by then
+    @Override
+    public Iterable<InterpreterDataType> values(){
+        return () -> new Iterator<>(){
+            private final ArrayList<InterpreterDataType> current = new ArrayList<>();
+            private int partitionIndex;
+            private int next;
+
+            @Override
+            public boolean hasNext(){
+                while(next == current.size() && partitionIndex < partitions.length){
+                    current.clear();
+                    next = 0;
+                    Partition partition = partitions[partitionIndex++];
+                    if(partition == null)
+                        continue;
+                    use(partition);
+                    for(int offset : partition.offsets)
+                        if(offset != 0)
+                            current.add(readValue(partition.data, offset - 1));
+                }
+                return next < current.size();
+            }
+
+            @Override
+            public InterpreterDataType next(){
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                return current.get(next++);
+            }
+        };
+    }
+
+    // Top bits pick the partition, the home slot inside it comes from a second multiply so the two don't line up
+    private static int partitionOf(int hash){
+        return (hash * 0x9E3779B9) >>> (32 - PARTITION_BITS);
+    }
+
+    private static int home(Partition partition, int hash){
+        return (hash * 0x85EBCA6B) >>> partition.shift;
+    }
+
+    private static byte[] encode(String key){
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int find(Partition partition, int hash, byte[] key){
+        for(int i = home(partition, hash); partition.offsets[i] != 0; i = (i + 1) & partition.mask)
+            if(partition.hashes[i] == hash && keyMatches(partition.data, partition.offsets[i] - 1, key))
+                return i;
+        return -1;
+    }
+
+    private static boolean keyMatches(ByteBuffer data, int record, byte[] key){
+        if(data.getInt(record) != key.length)
+            return false;
+        for(int i = 0; i < key.length; i++)
+            if(data.get(record + 4 + i) != key[i])
+                return false;
+        return true;
+    }
+
+    private static int recordLength(ByteBuffer data, int record){
+        int keyLength = data.getInt(record);
+        int value = record + 4 + keyLength;
+        return 4 + keyLength + 1 + (data.get(value) == NUMBER ? 8 : 4 + data.getInt(value + 1));
+    }
+
+    // Numbers that came from arithmetic are stored as numbers, everything else as the string it is,
+    // which keeps "007" as "007". Strnums are tagged as such so they come back still comparing as numbers
+    private static InterpreterDataType readValue(ByteBuffer data, int record){
+        int value = record + 4 + data.getInt(record);
+        byte tag = data.get(value);
+        if(tag == NUMBER)
+            return new InterpreterDataType(data.getDouble(value + 1));
+        byte[] text = new byte[data.getInt(value + 1)];
+        data.get(value + 5, text);
+        String string = new String(text, StandardCharsets.UTF_8);
+        return tag == STRNUM ? InterpreterDataType.strnum(string) : new InterpreterDataType(string);
+    }
+
+    // Writes a record at the end of the partition's data and returns where it starts
+    private static int append(Partition partition, byte[] key, InterpreterDataType value){
+        if(value instanceof InterpreterArrayDataType)
+            throw new IllegalArgumentException("Arrays can't be stored in an array that's been moved off the heap");
+        partition.spillFileCurrent = false;
+        byte[] text = value.isComputed() ? null : encode(value.getValue());
+        int length = 4 + key.length + 1 + (text == null ? 8 : 4 + text.length);
+        makeRoom(partition, length);
+
+        ByteBuffer data = partition.data;
+        int record = partition.end;
+        data.putInt(record, key.length);
+        data.put(record + 4, key);
+        int at = record + 4 + key.length;
+        if(text == null){
+            data.put(at, NUMBER);
+            data.putDouble(at + 1, value.getNumber());
+        } else {
+            data.put(at, value.isStrnum() ? STRNUM : STRING);
+            data.putInt(at + 1, text.length);
+            data.put(at + 5, text);
+        }
+        partition.end += length;
+        return record;
+    }
+
+    // Compacts if at least half of the data is dead, otherwise grows the buffer
+    private static void makeRoom(Partition partition, int length){
+        if(partition.end + length <= partition.capacity)
+            return;
+        int live = partition.end - partition.garbage;
+        int capacity = partition.capacity;
+        if(partition.garbage < partition.end / 2 || live + length > capacity){
+            long wanted = Math.max((long) capacity * 2, (long) live + length);
+            if(wanted > Integer.MAX_VALUE - 8)
+                throw new IllegalStateException("Off-heap array partition is full");
+            capacity = (int) wanted;
+        }
+        ByteBuffer data = allocate(capacity);
+        ByteBuffer old = partition.data;
+        int end = 0;
+        for(int i = 0; i < partition.offsets.length; i++){
+            if(partition.offsets[i] == 0)
+                continue;
+            int record = partition.offsets[i] - 1;
+            int recordLength = recordLength(partition.data, record);
+            data.put(end, partition.data, record, recordLength);
+            partition.offsets[i] = end + 1;
+            end += recordLength;
+        }
+        recycle(old);
+        residentBytes += capacity - partition.capacity;
+        partition.data = data;
+        partition.capacity = capacity;
+        partition.end = end;
+        partition.garbage = 0;
+        enforceBudget(partition);
+    }
+
+    private static void growIndex(Partition partition){
+        int[] oldHashes = partition.hashes;
+        int[] oldOffsets = partition.offsets;
+        int capacity = oldOffsets.length * 2;
+        partition.hashes = new int[capacity];
+        partition.offsets = new int[capacity];
+        partition.mask = capacity - 1;
+        partition.shift--;
+        for(int j = 0; j < oldOffsets.length; j++){
+            if(oldOffsets[j] == 0)
+                continue;
+            int i = home(partition, oldHashes[j]);
+            while(partition.offsets[i] != 0)
+                i = (i + 1) & partition.mask;
+            partition.hashes[i] = oldHashes[j];
+            partition.offsets[i] = oldOffsets[j];
+        }
+    }
+
+    private static Partition create(){
+        releaseDropped();
+        Partition partition = new Partition();
+        partition.capacity = INITIAL_PARTITION_BYTES;
+        partition.data = allocate(partition.capacity);
+        partition.lastUse = ++clock;
+        resident.add(partition);
+        residentBytes += partition.capacity;
+        enforceBudget(partition);
+        return partition;
+    }
+
+    // Marks the partition as just used, reading it back in if it was spilled
+    private static void use(Partition partition){
+        partition.lastUse = ++clock;
+        if(partition.data != null)
+            return;
+        releaseDropped();
+        ByteBuffer data = allocate(partition.capacity);
+        try(FileChannel channel = FileChannel.open(partition.spillFile, StandardOpenOption.READ)){
+            while(data.position() < partition.end)
+                if(channel.read(data) == -1)
+                    throw new IOException("Spill file %s is shorter than it should be".formatted(partition.spillFile));
+        } catch(IOException e){
+            throw new UncheckedIOException("Could not read back array partition from " + partition.spillFile, e);
+        }
+        data.clear();
+        partition.data = data;
+        resident.add(partition);
+        residentBytes += partition.capacity;
+        enforceBudget(partition);
+    }
+
+    // Spills the coldest partitions (never the one being worked on) until everything fits ARRAYMEM again
+    private static void enforceBudget(Partition working){
+        long budget = Interpreter.getArrayBudget();
+        while(budget >= 0 && residentBytes > budget && resident.size() > 1){
+            Partition coldest = null;
+            for(Partition partition : resident)
+                if(partition != working && (coldest == null || partition.lastUse < coldest.lastUse))
+                    coldest = partition;
+            spill(coldest);
+        }
+    }
+
+    private static void spill(Partition partition){
+        if(!partition.spillFileCurrent){
+            try {
+                if(partition.spillFile == null){
+                    partition.spillFile = Files.createTempFile("javawk-array", ".spill");
+                    partition.spillFile.toFile().deleteOnExit();
+                }
+                try(FileChannel channel = FileChannel.open(partition.spillFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                    ByteBuffer data = partition.data.slice(0, partition.end);
+                    while(data.hasRemaining())
+                        channel.write(data);
+                }
+            } catch(IOException e){
+                throw new UncheckedIOException("Could not spill array partition to disk", e);
+            }
+            partition.spillFileCurrent = true;
+        }
+        recycle(partition.data);
+        partition.data = null;
+        resident.remove(partition);
+        residentBytes -= partition.capacity;
+    }
+
+    private static ByteBuffer allocate(int capacity){
+        for(int i = spare.size() - 1; i >= 0; i--)
+            if(spare.get(i).capacity() == capacity)
+                return spare.remove(i).clear(); // Stale bytes don't matter, only what's been written gets read
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    private static void recycle(ByteBuffer buffer){
+        if(spare.size() == MAX_SPARE)
+            spare.remove(0);
+        spare.add(buffer);
+    }
+}
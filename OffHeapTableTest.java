@@ -0,0 +1,174 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class OffHeapTableTest {
+    private static final long BUDGET = 256 << 10; // Room for four of the 64 partitions, so a big table has to keep spilling
+
+    private static void setArrayMem(String budget){
+        new Interpreter(new Parser(new Lexer("BEGIN { x = 1 }").lex()).parse(), new HashMap<>(Map.of("ARRAYMEM", budget)));
+    }
+
+    @Before
+    public void smallBudget(){
+        setArrayMem("256k");
+    }
+
+    private static InterpreterDataType valueFor(int i){
+        return switch(i % 3){
+            case 0 -> new InterpreterDataType((double) i);
+            case 1 -> new InterpreterDataType("value " + i + " " + "x".repeat(i % 40));
+            default -> InterpreterDataType.strnum(Integer.toString(i));
+        };
+    }
+
+    @Test
+    public void testSpillAndReload(){
+        OffHeapTable table = new OffHeapTable();
+        try {
+            for(int i = 0; i < 3000; i++)
+                table.put("key" + i, valueFor(i));
+            assertTrue(OffHeapTable.residentBytes() <= BUDGET);
+            assertEquals(3000, table.size());
+            // Reading them all back brings every partition in from disk a few times over
+            for(int i = 0; i < 3000; i++)
+                assertEquals(valueFor(i), table.get("key" + i));
+            assertNull(table.get("key3000"));
+
+            // Replacing and removing, on partitions that are probably out on disk
+            for(int i = 0; i < 3000; i += 2)
+                assertTrue(table.remove("key" + i));
+            for(int i = 1; i < 3000; i += 4)
+                table.put("key" + i, new InterpreterDataType("replaced"));
+            assertEquals(1500, table.size());
+            assertTrue(OffHeapTable.residentBytes() <= BUDGET);
+            HashMap<String, InterpreterDataType> contents = new HashMap<>();
+            table.forEach(contents::put);
+            assertEquals(1500, contents.size());
+            for(int i = 0; i < 3000; i++){
+                InterpreterDataType expected = i % 2 == 0 ? null : i % 4 == 1 ? new InterpreterDataType("replaced") : valueFor(i);
+                assertEquals(expected, table.get("key" + i));
+                assertEquals(expected, contents.get("key" + i));
+            }
+        } finally {
+            table.release();
+        }
+    }
+
+    // Numbers, strings and strnums come back as what they were, not just the same text
+    @Test
+    public void testValueKinds(){
+        OffHeapTable table = new OffHeapTable();
+        try {
+            table.put("number", new InterpreterDataType(0.1));
+            table.put("string", new InterpreterDataType("007"));
+            table.put("strnum", InterpreterDataType.strnum("007"));
+            table.put("empty", InterpreterDataType.EMPTY);
+            for(int i = 0; i < 2000; i++) // Push them out to disk and back
+                table.put("filler" + i, new InterpreterDataType("x".repeat(50)));
+
+            InterpreterDataType number = table.get("number");
+            assertTrue(number.isComputed());
+            assertEquals(0.1, number.getNumber(), 0);
+            InterpreterDataType string = table.get("string");
+            assertEquals("007", string.getValue());
+            assertFalse(string.isStrnum());
+            assertFalse(string.isNumeric());
+            InterpreterDataType strnum = table.get("strnum");
+            assertEquals("007", strnum.getValue());
+            assertTrue(strnum.isStrnum());
+            assertTrue(strnum.isNumeric());
+            assertEquals("", table.get("empty").getValue());
+
+            assertThrows(IllegalArgumentException.class, () -> table.put("array", new InterpreterArrayDataType()));
+        } finally {
+            table.release();
+        }
+    }
+
+    // for (k in a) delete a[k] gets every element, however the deletes shift the slots around
+    @Test
+    public void testRemoveWhileIterating(){
+        OffHeapTable table = new OffHeapTable();
+        try {
+            for(int i = 0; i < 1000; i++)
+                table.put("k" + i, new InterpreterDataType("k" + i));
+            Set<String> seen = new HashSet<>();
+            for(InterpreterDataType element : table.values()){
+                assertTrue(seen.add(element.getValue()));
+                assertTrue(table.remove(element.getValue()));
+            }
+            assertEquals(1000, seen.size());
+            assertEquals(0, table.size());
+        } finally {
+            table.release();
+        }
+    }
+
+    @Test
+    public void testRelease(){
+        long before = OffHeapTable.residentBytes();
+        OffHeapTable table = new OffHeapTable();
+        for(int i = 0; i < 1000; i++)
+            table.put("k" + i, new InterpreterDataType(i));
+        assertTrue(OffHeapTable.residentBytes() > before);
+        table.release();
+        assertEquals(before, OffHeapTable.residentBytes());
+    }
+
+    // An array nobody clears (a function's local one, say) gives its memory back once it's garbage
+    @Test(timeout = 30000)
+    public void testDroppedTable() throws InterruptedException {
+        long before = OffHeapTable.residentBytes();
+        fillAndDrop();
+        assertTrue(OffHeapTable.residentBytes() > before);
+        while(OffHeapTable.residentBytes() != before){
+            System.gc();
+            Thread.sleep(10);
+            OffHeapTable probe = new OffHeapTable();
+            probe.put("p", InterpreterDataType.EMPTY); // Making a partition is when dropped tables get freed
+            probe.release();
+        }
+    }
+
+    private static void fillAndDrop(){
+        OffHeapTable table = new OffHeapTable();
+        for(int i = 0; i < 1000; i++)
+            table.put("k" + i, new InterpreterDataType(i));
+    }
+
+    @Test
+    public void testArrayBudget(){
+        setArrayMem("1.5k");
+        assertEquals(1536, Interpreter.getArrayBudget());
+        setArrayMem(" 2M ");
+        assertEquals(2 << 20, Interpreter.getArrayBudget());
+        setArrayMem("4096");
+        assertEquals(4096, Interpreter.getArrayBudget());
+        setArrayMem("");
+        assertEquals(-1, Interpreter.getArrayBudget());
+        // Caught as soon as the interpreter starts, however few elements the program ends up using
+        for(String budget : new String[]{" ", "k", "-1m", "lots", "12q", "12QB"}){
+            RuntimeException e = assertThrows(budget, RuntimeException.class, () -> setArrayMem(budget));
+            assertTrue(e.getMessage(), e.getMessage().startsWith("ARRAYMEM should be a size in bytes"));
+        }
+    }
+
+    // Assigning ARRAYMEM in the program takes effect (and gets checked) right then
+    @Test
+    public void testArrayBudgetAssigned(){
+        new Interpreter(new Parser(new Lexer("BEGIN { ARRAYMEM = \"8k\" }").lex()).parse(), new HashMap<>()).interpretProgram();
+        assertEquals(8192, Interpreter.getArrayBudget());
+        new Interpreter(new Parser(new Lexer("BEGIN { ARRAYMEM = \"8k\"; ARRAYMEM = \"\" }").lex()).parse(), new HashMap<>()).interpretProgram();
+        assertEquals(-1, Interpreter.getArrayBudget());
+        Interpreter bad = new Interpreter(new Parser(new Lexer("BEGIN { ARRAYMEM = \"12QB\" }").lex()).parse(), new HashMap<>());
+        RuntimeException e = assertThrows(RuntimeException.class, bad::interpretProgram);
+        assertTrue(e.getMessage(), e.getMessage().startsWith("ARRAYMEM should be a size in bytes"));
+    }
+}
@@ -212,16 +212,23 @@ public class Parser {
         if(tokens.matchAndRemove(Token.TokenType.LEFTBRACKET).isEmpty())
             return Optional.of(new ASTnode.DeleteNode(new VariableReferenceNode(nameToken.get().getValue()), reportPosition()));
         
+        // delete a[i, j] removes the one element a[i, j], the indices are chained up like any other subscript
         Optional<Node> index;
-        LinkedList<Node> indices = new LinkedList<>();
-        do{
-            if((index = parseOperation()).isEmpty())
+        if((index = parseOperation()).isEmpty())
+            throw new AwkSyntaxException(String.format("Could not parse index for array, reached %s", reportPosition()));
+        Node lastIndex = index.get();
+        Optional<Node> nextIndex;
+        while(tokens.matchAndRemove(Token.TokenType.COMMA).isPresent()){
+            if((nextIndex = parseOperation()).isEmpty())
                 throw new AwkSyntaxException(String.format("Could not parse index for array, reached %s", reportPosition()));
-            indices.add(index.get());
-        } while(tokens.matchAndRemove(Token.TokenType.COMMA).isPresent());
+            lastIndex.setNext(nextIndex.get());
+            lastIndex = nextIndex.get();
+        }
         
+        if(tokens.matchAndRemove(Token.TokenType.RIGHTBRACKET).isEmpty())
+            throw new AwkSyntaxException(String.format("Missing \"]\" after delete index, reached %s", reportPosition()));
         acceptSeperators();
-        return Optional.of(new ASTnode.DeleteNode(new VariableReferenceNode(nameToken.get().getValue()), indices, reportPosition()));
+        return Optional.of(new ASTnode.DeleteNode(new VariableReferenceNode(nameToken.get().getValue()), List.of(index.get()), reportPosition()));
     }
     
     private Optional<StatementNode> parseReturn(){
@@ -973,19 +980,24 @@ public class Parser {
                 if((value = parseOperation()).isEmpty())
                     throw new AwkSyntaxException(String.format("Could not evaluate index for array, reached %s", reportPosition()));
 
-                if(tokens.matchAndRemove(Token.TokenType.RIGHTBRACKET).isEmpty())
-                    throw new AwkSyntaxException(String.format("Missing \"]\", Unclosed array reference? Reached %s", reportPosition()));
-
-
+                // a[i, j] and a[i][j] are the same element, every index just gets chained onto the first one
                 Node currentDepth = value.get();
                 Optional<Node> nextValue;
-                while(tokens.matchAndRemove(Token.TokenType.LEFTBRACKET).isPresent()){
-                    if((nextValue = parseOperation()).isEmpty())
-                        throw new AwkSyntaxException(String.format("Could not evaluate index for multidimensional array, reached %s", reportPosition()));
+                while(true){
+                    while(tokens.matchAndRemove(Token.TokenType.COMMA).isPresent()){
+                        if((nextValue = parseOperation()).isEmpty())
+                            throw new AwkSyntaxException(String.format("Could not evaluate index for multidimensional array, reached %s", reportPosition()));
+                        currentDepth.setNext(nextValue.get());
+                        currentDepth = nextValue.get();
+                    }
 
                     if(tokens.matchAndRemove(Token.TokenType.RIGHTBRACKET).isEmpty())
                         throw new AwkSyntaxException(String.format("Missing \"]\", Unclosed array reference? Reached %s", reportPosition()));
 
+                    if(tokens.matchAndRemove(Token.TokenType.LEFTBRACKET).isEmpty())
+                        break;
+                    if((nextValue = parseOperation()).isEmpty())
+                        throw new AwkSyntaxException(String.format("Could not evaluate index for multidimensional array, reached %s", reportPosition()));
                     currentDepth.setNext(nextValue.get());
                     currentDepth = nextValue.get();
                 }
@@ -365,6 +365,38 @@ public class ParserTest {
         }
     }
 
+    private static Node assignedIn(String program){
+        AssignmentNode assignment = (AssignmentNode) new Parser(new Lexer(program).lex()).parse().getBegin().getFirst().getStatements().getFirst();
+        return assignment.getAssignedTo();
+    }
+    
+    // a[i, j] and a[i][j] are both the one subscript, i with j chained on after it
+    @Test
+    public void testMultidimensionalSubscripts(){
+        for(String program : new String[]{"BEGIN { x = a[i, j] }", "BEGIN { x = a[i][j] }"}){
+            VariableReferenceNode reference = (VariableReferenceNode) assignedIn(program);
+            assertEquals(program, "a", reference.getName());
+            Node first = reference.getIndex().orElseThrow();
+            assertEquals(program, "i", ((VariableReferenceNode) first).getName());
+            Node second = first.getNext().orElseThrow();
+            assertEquals(program, "j", ((VariableReferenceNode) second).getName());
+            assertTrue(program, second.getNext().isEmpty());
+        }
+    }
+    
+    // (i, j) in a parses as j in (i in a), with the subscript still chained from i
+    @Test
+    public void testMultidimensionalMembership(){
+        OperationNode outer = (OperationNode) assignedIn("BEGIN { x = (i, j) in a }");
+        assertTrue(outer.isOp(OperationNode.Operation.IN));
+        assertEquals("j", ((VariableReferenceNode) outer.getLeft()).getName());
+        OperationNode inner = (OperationNode) outer.getRight().orElseThrow();
+        assertTrue(inner.isOp(OperationNode.Operation.IN));
+        assertEquals("i", ((VariableReferenceNode) inner.getLeft()).getName());
+        assertEquals("j", ((VariableReferenceNode) inner.getLeft().getNext().orElseThrow()).getName());
+        assertEquals("a", ((VariableReferenceNode) inner.getRight().orElseThrow()).getName());
+    }
+
     @Test
     public void testTokenManager(){
 
@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Reads another stream on its own thread, so whatever that stream has to do per byte (decompressing, mostly)
+// runs on a second core while the interpreter works through the blocks it already produced.
+// Blocks go through a bounded queue and get recycled once they've been read, so the reader thread can only
+// ever get QUEUE_BLOCKS ahead and memory stays fixed no matter how big the input is.
+public class PipelinedInputStream extends InputStream {
+    public static final int BLOCK_SIZE = 1 << 16;
+    public static final int QUEUE_BLOCKS = 8;
+    private static final ByteBuffer END = ByteBuffer.allocate(0); // Sent once the source runs out (or fails)
+
+    private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(QUEUE_BLOCKS + 1); // +1 so END always fits
+    private final BlockingQueue<ByteBuffer> empty = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+    private final InputStream source;
+    private final Thread reader;
+    private volatile Throwable failure;
+    private ByteBuffer current;
+
+    public PipelinedInputStream(InputStream source, String name){
+        this.source = source;
+        for(int i = 0; i < QUEUE_BLOCKS; i++)
+            empty.add(ByteBuffer.allocate(BLOCK_SIZE));
+        reader = new Thread(this::readAhead, "JavAWK reader (%s)".formatted(name));
+        reader.setDaemon(true); // Never keeps the JVM alive, the interpreter might stop reading early (exit in a rule, say)
+        reader.start();
+    }
+
+    // Runs on the reader thread
+    private void readAhead(){
+        try(source){
+            while(true){
+                ByteBuffer block = empty.take();
+                int read = source.readNBytes(block.array(), 0, BLOCK_SIZE);
+                if(read == 0)
+                    break;
+                block.clear().limit(read);
+                filled.put(block);
+            }
+        } catch(InterruptedException e){
+            return; // Closed, nobody's waiting for END
+        } catch(Throwable e){
+            failure = e; // Whatever it is, the interpreter has to hear about it rather than wait forever for END
+        }
+        filled.add(END);
+    }
+
+    // Makes sure current has something left to read, false at the end of the stream
+    private boolean nextBlock() throws IOException {
+        if(current == END)
+            return false;
+        if(current != null && current.hasRemaining())
+            return true;
+        if(current != null)
+            empty.add(current); // Done with it, the reader can fill it again
+        try {
+            current = filled.take();
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting on %s".formatted(reader.getName()));
+        }
+        if(current == END){
+            if(failure instanceof Error error)
+                throw error; // Out of memory and the like aren't input problems, they go up as they are
+            if(failure != null)
+                throw new IOException("Could not read input", failure);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(!nextBlock())
+            return -1;
+        return current.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if(length == 0)
+            return 0;
+        if(!nextBlock())
+            return -1;
+        int read = Math.min(length, current.remaining());
+        current.get(bytes, offset, read);
+        return read;
+    }
+
+    @Override
+    public void close(){
+        reader.interrupt(); // The reader closes the source on its way out
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.regex.Pattern;
+
+// What RS compiled to. Like FS, RS gets looked at once and turned into the cheapest way of finding record ends:
+// "\n" is a normal line (\r\n and \r are accepted too, same as always), any other single character is taken literally,
+// "" is paragraph mode (records are separated by blank lines) and anything longer is a regex, as in gawk.
+public class RecordSeparator {
+    public enum Kind { LINE, CHARACTER, PARAGRAPH, REGEX }
+
+    public static final RecordSeparator NEWLINE = new RecordSeparator(Kind.LINE, '\n', null);
+
+    private final Kind kind;
+    private final char character;
+    private final Pattern pattern;
+
+    private RecordSeparator(Kind kind, char character, Pattern pattern){
+        this.kind = kind;
+        this.character = character;
+        this.pattern = pattern;
+    }
+
+    public static RecordSeparator compile(String separator){
+        if(separator.equals("\n"))
+            return NEWLINE;
+        if(separator.isEmpty())
+            return new RecordSeparator(Kind.PARAGRAPH, '\n', null);
+        if(separator.length() == 1)
+            return new RecordSeparator(Kind.CHARACTER, separator.charAt(0), null);
+        return new RecordSeparator(Kind.REGEX, '\0', Pattern.compile(separator));
+    }
+
+    public Kind getKind(){
+        return kind;
+    }
+
+    public char getCharacter(){
+        return character;
+    }
+
+    public Pattern getPattern(){
+        return pattern;
+    }
+}
@@ -0,0 +1,61 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Where the LineManager gets its records from. Sources hand out one record at a time,
+// so nothing ever needs to hold an entire input file in memory.
+public interface RecordSource extends Closeable {
+
+    // Returns the next record (without its terminator), or null once the source has run out.
+    // Records only need to be CharSequences so sources can hand out views instead of copying into Strings.
+    CharSequence nextRecord() throws IOException;
+
+    // RS changed. Sources that can't split on anything but newlines just refuse anything else
+    default void setRecordSeparator(RecordSeparator separator){
+        if(separator.getKind() != RecordSeparator.Kind.LINE)
+            throw new UnsupportedOperationException("this input can only be split into lines");
+    }
+
+    @Override
+    default void close() throws IOException {
+        // Most sources have nothing to release
+    }
+
+    // Doesn't open the real source until a record (or a new RS) is actually asked for,
+    // so a program that never reads any input never touches stdin either
+    static RecordSource lazily(Supplier<RecordSource> opener){
+        return new RecordSource(){
+            private RecordSource source;
+
+            private RecordSource open(){
+                if(source == null)
+                    source = opener.get();
+                return source;
+            }
+
+            @Override
+            public CharSequence nextRecord() throws IOException {
+                return open().nextRecord();
+            }
+
+            @Override
+            public void setRecordSeparator(RecordSeparator separator){
+                open().setRecordSeparator(separator);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if(source != null)
+                    source.close();
+            }
+        };
+    }
+
+    // Mostly for the debug interpreter, serves records out of a list we already have
+    static RecordSource of(List<String> records){
+        Iterator<String> iterator = records.iterator();
+        return () -> iterator.hasNext() ? iterator.next() : null;
+    }
+}
@@ -11,7 +11,7 @@ public class ReturnType extends InterpreterDataType{
     public final String position;
 
     public ReturnType(Control controlType, String position){
-        super(null);
+        super((String) null);
         this.controlType = controlType;
         this.position = position;
     }
@@ -36,14 +36,24 @@ public class ReturnType extends InterpreterDataType{
             this.controlType = Control.NORMAL;
         this.position = position;
     }
+    // Keeps the value as it is, so a number doesn't have to go through its string form and back
+    public ReturnType(InterpreterDataType value, boolean returning, String position){
+        super(value);
+        if(returning)
+            this.controlType = Control.RETURN;
+        else
+            this.controlType = Control.NORMAL;
+        this.position = position;
+    }
+
     public ReturnType(String value, boolean returning){
         this(value, returning, "[debug node]");
     }
 
     public InterpreterDataType expectData(String errorMessage){
-        if(this.value == null)
+        if(this.getValue() == null)
             throw new ValueNotFoundException(errorMessage);
-        return new InterpreterDataType(this.value);
+        return new InterpreterDataType(this);
     }
     
     public ReturnType rejectLoopControl(String errorMessage){
@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+
+// Reads records off a reader through one reusable char buffer, looking for record ends (see RecordSeparator) right in the buffer.
+// Each record is copied out exactly once, straight into its String. The buffer only grows if a single record doesn't fit,
+// so memory use depends on the longest record, not on how big the input is.
+public class StreamRecordSource implements RecordSource {
+    public static final int BUFFER_SIZE = 1 << 16; // 64K chars, plenty for a single record
+    public static final int STDIN_BUFFER_SIZE = 1 << 20; // Pipes can deliver a lot at once, so stdin gets a bigger buffer
+
+    private final Reader reader;
+    private char[] buffer;
+    private int start; // Where the next record starts
+    private int limit; // End of the chars read so far
+    private int searched; // How far the search for the current record's end has gotten, so refills don't look at the same chars again
+    private boolean endOfInput;
+    private RecordSeparator separator = RecordSeparator.NEWLINE;
+    private Matcher matcher; // Only for regex separators
+    private int terminatorEnd; // Set by the find methods, where the next record starts once this one is handed out
+
+    public StreamRecordSource(Reader reader, int bufferSize){
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    public StreamRecordSource(Reader reader){
+        this(reader, BUFFER_SIZE);
+    }
+
+    public StreamRecordSource(Path path) throws IOException {
+        // Same strict UTF-8 decoding Files.readAllLines used, so bad input still fails loudly
+        this(Channels.newReader(FileChannel.open(path, StandardOpenOption.READ), StandardCharsets.UTF_8.newDecoder(), -1));
+    }
+
+    // Decoded the same strict way, for input that doesn't come straight from a file (decompressed input, for one)
+    public StreamRecordSource(InputStream in){
+        this(new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder()));
+    }
+
+    // Reads whatever shows up on stdin. Reader.read hands back what's there instead of waiting for the whole buffer to fill,
+    // so something like "tail -f log | JavAWK ..." still sees every record as soon as its terminator arrives.
+    public static StreamRecordSource stdin(){
+        return new StreamRecordSource(new InputStreamReader(System.in, StandardCharsets.UTF_8), STDIN_BUFFER_SIZE);
+    }
+
+    @Override
+    public void setRecordSeparator(RecordSeparator separator){
+        this.separator = separator;
+        this.matcher = separator.getKind() == RecordSeparator.Kind.REGEX ? separator.getPattern().matcher("") : null;
+    }
+
+    @Override
+    public String nextRecord() throws IOException {
+        if(separator.getKind() == RecordSeparator.Kind.PARAGRAPH && !skipNewlines())
+            return null; // Paragraph mode ignores newlines in front of a record, the input might have been nothing but those
+        searched = start;
+
+        int end;
+        while((end = findEnd()) == -1){
+            if(!fill()){
+                if((end = findEnd()) != -1)
+                    break; // Knowing the input is over was enough to settle it (a \r at the very end, say)
+                // Out of input, whatever is left is the last record (it just didn't have a terminator)
+                if(start == limit)
+                    return null;
+                end = limit;
+                terminatorEnd = limit;
+                if(separator.getKind() == RecordSeparator.Kind.PARAGRAPH && buffer[end - 1] == '\n')
+                    end--; // Paragraph mode drops the newline at the very end of the input
+                break;
+            }
+        }
+
+        String record = new String(buffer, start, end - start);
+        start = terminatorEnd;
+        return record;
+    }
+
+    // Returns where the record starting at start ends and sets terminatorEnd, or -1 if the buffer doesn't hold its end yet
+    private int findEnd(){
+        switch(separator.getKind()){
+            case LINE -> {
+                for(int i = searched; i < limit; i++){
+                    char c = buffer[i];
+                    if(c == '\n'){
+                        terminatorEnd = i + 1;
+                        return i;
+                    }
+                    if(c == '\r'){
+                        // Same line endings BufferedReader.readLine accepts (\n, \r, \r\n), a \r at the end of the buffer has to wait for the next char
+                        if(i + 1 < limit){
+                            terminatorEnd = buffer[i + 1] == '\n' ? i + 2 : i + 1;
+                            return i;
+                        }
+                        if(endOfInput){
+                            terminatorEnd = i + 1;
+                            return i;
+                        }
+                        searched = i;
+                        return -1;
+                    }
+                }
+            }
+            case CHARACTER -> {
+                char separatorChar = separator.getCharacter();
+                for(int i = searched; i < limit; i++)
+                    if(buffer[i] == separatorChar){
+                        terminatorEnd = i + 1;
+                        return i;
+                    }
+            }
+            case PARAGRAPH -> {
+                // A blank line ends the record. Any more newlines after it get eaten by skipNewlines before the next record
+                for(int i = searched; i < limit; i++)
+                    if(buffer[i] == '\n'){
+                        if(i + 1 == limit && !endOfInput){
+                            searched = i;
+                            return -1;
+                        }
+                        if(i + 1 < limit && buffer[i + 1] == '\n'){
+                            terminatorEnd = i + 2;
+                            return i;
+                        }
+                    }
+            }
+            case REGEX -> {
+                // The regex has to see the whole record again, a match could start anywhere in it
+                matcher.reset(CharBuffer.wrap(buffer, start, limit - start));
+                while(matcher.find()){ // Empty matches don't separate anything, find() steps past them by itself
+                    if(matcher.hitEnd() && !endOfInput)
+                        return -1; // More input could make this a longer (or different) match
+                    if(matcher.end() > matcher.start()){
+                        terminatorEnd = start + matcher.end();
+                        return start + matcher.start();
+                    }
+                }
+                return -1;
+            }
+        }
+        searched = limit;
+        return -1;
+    }
+
+    // Paragraph mode, moves start past any newlines. False if the input runs out first
+    private boolean skipNewlines() throws IOException {
+        while(true){
+            while(start < limit && buffer[start] == '\n')
+                start++;
+            if(start < limit)
+                return true;
+            if(!fill())
+                return false;
+        }
+    }
+
+    // Reads more input into the buffer, after sliding the unfinished record down to the front (or growing the buffer if it fills the whole thing).
+    // False once the reader has nothing left
+    private boolean fill() throws IOException {
+        if(endOfInput)
+            return false;
+        if(start > 0){
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            limit -= start;
+            searched -= start;
+            start = 0;
+        } else if(limit == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2); // One record bigger than the buffer
+
+        int read = reader.read(buffer, limit, buffer.length - limit);
+        if(read == -1){
+            endOfInput = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
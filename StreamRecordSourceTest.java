@@ -0,0 +1,103 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StreamRecordSourceTest {
+
+    // Hands out at most chunk chars per read, the way a pipe delivers whatever has arrived so far
+    private static Reader chunked(String input, int chunk){
+        return new Reader(){
+            private final StringReader reader = new StringReader(input);
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return reader.read(buffer, offset, Math.min(length, chunk));
+            }
+
+            @Override
+            public void close(){
+                reader.close();
+            }
+        };
+    }
+
+    private static List<String> read(String input, String separator, int bufferSize, int chunk) throws IOException {
+        List<String> records = new ArrayList<>();
+        try(StreamRecordSource source = new StreamRecordSource(chunked(input, chunk), bufferSize)){
+            source.setRecordSeparator(RecordSeparator.compile(separator));
+            String record;
+            while((record = source.nextRecord()) != null)
+                records.add(record);
+        }
+        return records;
+    }
+
+    // Small buffers and short reads put every record end (and every bit of a regex match) on a buffer boundary sooner or later
+    private static void assertRecords(List<String> expected, String input, String separator) throws IOException {
+        for(int bufferSize : new int[]{1, 2, 3, 5, 8, StreamRecordSource.BUFFER_SIZE})
+            for(int chunk : new int[]{1, 2, 7, Integer.MAX_VALUE})
+                assertEquals("buffer %d, reads of %d".formatted(bufferSize, chunk), expected, read(input, separator, bufferSize, chunk));
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        assertRecords(List.of("a", "b", "c"), "a\nb\nc\n", "\n");
+        assertRecords(List.of("a", "b", "c"), "a\nb\nc", "\n");
+        assertRecords(List.of("a", "", "b", "c", ""), "a\r\n\rb\rc\n\n", "\n"); // \r\n, \r and \n all end a line, even split across reads
+        assertRecords(List.of(), "", "\n");
+    }
+
+    @Test
+    public void testCharacter() throws IOException {
+        assertRecords(List.of("a", "b", "", "c\nd"), "a;b;;c\nd", ";");
+        assertRecords(List.of("a", "b"), "a;b;", ";");
+    }
+
+    @Test
+    public void testParagraphs() throws IOException {
+        assertRecords(List.of("para one\nline two", "para two"), "\n\npara one\nline two\n\n\n\npara two\n", "");
+        assertRecords(List.of("a", "b"), "a\n\nb", "");
+        assertRecords(List.of("a", "b"), "a\n\n\nb\n\n\n", "");
+        assertRecords(List.of("single\nparagraph"), "single\nparagraph", "");
+        assertRecords(List.of(), "\n\n\n", "");
+    }
+
+    @Test
+    public void testRegex() throws IOException {
+        assertRecords(List.of("a", "b", "c"), "a\n---\nb\n-----\nc", "\n-+\n");
+        assertRecords(List.of("a", "b", "c"), "axxxxbxc", "x+"); // The whole run of x's is one separator, however the reads cut it
+        assertRecords(List.of("a", "b"), "axxb", "x*"); // Empty matches don't separate anything
+        assertRecords(List.of("one", "two", "three"), "one<br>two<BR/>three<br>", "<[bB][rR]/?>");
+        assertRecords(List.of("a", "b\n", "c"), "a12b\n3c", "[0-9]+");
+        assertRecords(List.of("a", "b"), "a;b", ";|$"); // Only matches empty at the very end
+    }
+
+    // An empty match far ahead (right before the z here) mustn't be looked for again from every position in front of it
+    @Test(timeout = 10000)
+    public void testRegexEmptyMatchFarAhead() throws IOException {
+        String record = "y".repeat(200000) + "z";
+        assertEquals(List.of(record, "w"), read(record + ";w", ";|(?=z)", 1 << 20, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testSeparatorChange() throws IOException {
+        // RS changing between records applies from the next record on
+        try(StreamRecordSource source = new StreamRecordSource(chunked("first\na;b\n\nc\n\nd", 3), 4)){
+            assertEquals("first", source.nextRecord());
+            source.setRecordSeparator(RecordSeparator.compile(";"));
+            assertEquals("a", source.nextRecord());
+            source.setRecordSeparator(RecordSeparator.compile(""));
+            assertEquals("b", source.nextRecord());
+            assertEquals("c", source.nextRecord());
+            source.setRecordSeparator(RecordSeparator.NEWLINE);
+            assertEquals("d", source.nextRecord());
+            assertNull(source.nextRecord());
+        }
+    }
+}
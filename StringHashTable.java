@@ -0,0 +1,158 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+// Open addressing hash table from strings to values, it's what an AWK array turns into once its keys stop being small integers.
+// java.util.HashMap spends a Node object on every entry on top of its table slot, here an entry is three array slots side by side:
+// the key, its value, and its hash (cached, so probing and growing only compare ints until the hashes match).
+// Linear probing, and removing shifts the entries after it back instead of leaving tombstones,
+// so lookups never wade through deleted slots and deleting everything leaves a table as good as new.
+public final class StringHashTable implements ArrayTable {
+    private static final int MINIMUM_CAPACITY = 16;
+    private static final int MAX_LOAD_PERCENT = 65; // Past this, probe sequences start getting long
+
+    private String[] keys; // null for an empty slot
+    private InterpreterDataType[] values;
+    private int[] hashes;
+    private int mask;
+    private int shift; // 32 minus log2 of the capacity, for picking a home slot out of the top bits of the hash
+    private int size;
+    private int resizeAt;
+
+    public StringHashTable(){
+        this(0);
+    }
+
+    // Sized so expected entries fit without growing
+    public StringHashTable(int expected){
+        int capacity = MINIMUM_CAPACITY;
+        while((long) capacity * MAX_LOAD_PERCENT / 100 < expected)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity){
+        keys = new String[capacity];
+        values = new InterpreterDataType[capacity];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        resizeAt = (int) ((long) capacity * MAX_LOAD_PERCENT / 100);
+    }
+
+    // String's own hash is cached in the string, but keys like "host1", "host2"... hash to neighbours.
+    // Multiplying by the golden ratio and taking the top bits spreads those out
+    private int home(int hash){
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+
+    // The slot holding key, or -1
+    private int find(String key){
+        int hash = key.hashCode();
+        for(int i = home(hash); keys[i] != null; i = (i + 1) & mask)
+            if(hashes[i] == hash && keys[i].equals(key))
+                return i;
+        return -1;
+    }
+
+    @Override
+    public InterpreterDataType get(String key){
+        int slot = find(key);
+        return slot == -1 ? null : values[slot];
+    }
+
+    public boolean containsKey(String key){
+        return find(key) != -1;
+    }
+
+    @Override
+    public void put(String key, InterpreterDataType value){
+        int hash = key.hashCode();
+        int i = home(hash);
+        for(; keys[i] != null; i = (i + 1) & mask)
+            if(hashes[i] == hash && keys[i].equals(key)){
+                values[i] = value;
+                return;
+            }
+        keys[i] = key;
+        values[i] = value;
+        hashes[i] = hash;
+        if(++size > resizeAt)
+            grow();
+    }
+
+    @Override
+    public boolean remove(String key){
+        int hole = find(key);
+        if(hole == -1)
+            return false;
+        size--;
+        // Anything after the hole that would have probed through it moves back into it, until an empty slot ends the run
+        for(int i = (hole + 1) & mask; keys[i] != null; i = (i + 1) & mask){
+            int distance = (i - home(hashes[i])) & mask;
+            if(distance >= ((i - hole) & mask)){
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hashes[hole] = hashes[i];
+                hole = i;
+            }
+        }
+        keys[hole] = null;
+        values[hole] = null;
+        return true;
+    }
+
+    @Override
+    public int size(){
+        return size;
+    }
+
+    private void grow(){
+        String[] oldKeys = keys;
+        InterpreterDataType[] oldValues = values;
+        int[] oldHashes = hashes;
+        allocate(keys.length * 2);
+        for(int j = 0; j < oldKeys.length; j++){
+            if(oldKeys[j] == null)
+                continue;
+            int i = home(oldHashes[j]);
+            while(keys[i] != null) // Every key is already unique, only an empty slot is needed
+                i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+            hashes[i] = oldHashes[j];
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, InterpreterDataType> action){
+        for(int i = 0; i < keys.length; i++)
+            if(keys[i] != null)
+                action.accept(keys[i], values[i]);
+    }
+
+    // Walks a copy of the slots as they were when the loop started. Removing shifts later entries back into earlier slots,
+    // so walking the live ones would skip whatever got moved behind the loop (for (k in a) delete a[k] would leave some behind)
+    @Override
+    public Iterable<InterpreterDataType> values(){
+        InterpreterDataType[] elements = Arrays.copyOf(values, values.length);
+        return () -> new Iterator<>(){
+            private int next;
+
+            @Override
+            public boolean hasNext(){
+                while(next < elements.length && elements[next] == null)
+                    next++;
+                return next < elements.length;
+            }
+
+            @Override
+            public InterpreterDataType next(){
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                return elements[next++];
+            }
+        };
+    }
+}
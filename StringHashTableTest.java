@@ -0,0 +1,156 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class StringHashTableTest {
+
+    // "Aa" and "BB" have the same hashCode, so every string made of n of them does too: 2^n keys all wanting the same slot
+    private static List<String> colliding(int n){
+        List<String> keys = new ArrayList<>();
+        for(int bits = 0; bits < 1 << n; bits++){
+            StringBuilder key = new StringBuilder();
+            for(int i = 0; i < n; i++)
+                key.append((bits >> i & 1) == 0 ? "Aa" : "BB");
+            keys.add(key.toString());
+        }
+        return keys;
+    }
+
+    private static InterpreterDataType value(String key){
+        return new InterpreterDataType(key);
+    }
+
+    private static void assertSame(HashMap<String, InterpreterDataType> expected, StringHashTable table){
+        assertEquals(expected.size(), table.size());
+        for(var entry : expected.entrySet())
+            assertEquals(entry.getKey(), entry.getValue(), table.get(entry.getKey()));
+        HashMap<String, InterpreterDataType> contents = new HashMap<>();
+        table.forEach((key, value) -> assertNull("Twice: " + key, contents.put(key, value)));
+        assertEquals(expected, contents);
+    }
+
+    @Test
+    public void testPutGetRemove(){
+        StringHashTable table = new StringHashTable();
+        table.put("a", value("1"));
+        table.put("b", value("2"));
+        table.put("a", value("3")); // Replaces, doesn't add
+        assertEquals(2, table.size());
+        assertEquals(value("3"), table.get("a"));
+        assertNull(table.get("c"));
+        assertTrue(table.containsKey("b"));
+        assertTrue(table.remove("a"));
+        assertFalse(table.remove("a"));
+        assertFalse(table.remove("never there"));
+        assertNull(table.get("a"));
+        assertEquals(1, table.size());
+        table.put("", value("empty"));
+        assertEquals(value("empty"), table.get(""));
+    }
+
+    // Deleting from the middle of a run of colliding keys has to shift the rest back, or they can't be found any more
+    @Test
+    public void testRemoveFromCollisions(){
+        List<String> keys = colliding(4);
+        assertEquals(keys.get(0).hashCode(), keys.get(15).hashCode());
+        for(int removed = 0; removed < keys.size(); removed++){
+            StringHashTable table = new StringHashTable();
+            HashMap<String, InterpreterDataType> expected = new HashMap<>();
+            for(String key : keys){
+                table.put(key, value(key));
+                expected.put(key, value(key));
+            }
+            table.put("other", value("other")); // Lands somewhere in or after the run, depending on its own hash
+            expected.put("other", value("other"));
+            assertTrue(table.remove(keys.get(removed)));
+            expected.remove(keys.get(removed));
+            assertSame(expected, table);
+        }
+    }
+
+    @Test
+    public void testRemoveEverything(){
+        StringHashTable table = new StringHashTable();
+        List<String> keys = colliding(6);
+        for(String key : keys)
+            table.put(key, value(key));
+        for(int i = 0; i < 1000; i++)
+            table.put("k" + i, value("k" + i));
+        for(String key : keys)
+            assertTrue(table.remove(key));
+        for(int i = 999; i >= 0; i--)
+            assertTrue(table.remove("k" + i));
+        assertEquals(0, table.size());
+        table.forEach((key, value) -> fail("Left behind: " + key));
+        assertFalse(table.values().iterator().hasNext());
+
+        // Good as new afterwards
+        table.put("k1", value("x"));
+        assertEquals(value("x"), table.get("k1"));
+        assertEquals(1, table.size());
+    }
+
+    // Random puts and removes, checked against HashMap, with the table growing through it all
+    @Test
+    public void testAgainstHashMap(){
+        Random random = new Random(42);
+        StringHashTable table = new StringHashTable(3);
+        HashMap<String, InterpreterDataType> expected = new HashMap<>();
+        List<String> keys = new ArrayList<>(colliding(8));
+        for(int i = 0; i < 2000; i++)
+            keys.add("host" + i);
+        for(int round = 0; round < 20000; round++){
+            String key = keys.get(random.nextInt(keys.size()));
+            if(random.nextInt(3) == 0)
+                assertEquals(key, expected.remove(key) != null, table.remove(key));
+            else {
+                InterpreterDataType value = value(key + round);
+                expected.put(key, value);
+                table.put(key, value);
+            }
+            if(round % 1000 == 0)
+                assertSame(expected, table);
+        }
+        assertSame(expected, table);
+    }
+
+    // for (k in a) delete a[k], loops that delete the element they're on still see every element once and empty the array
+    @Test
+    public void testRemoveWhileIterating(){
+        for(List<String> keys : List.of(colliding(5), List.of("a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l"))){
+            StringHashTable table = new StringHashTable();
+            for(String key : keys)
+                table.put(key, value(key));
+            Set<String> seen = new HashSet<>();
+            for(InterpreterDataType element : table.values()){
+                assertTrue("Twice: " + element.getValue(), seen.add(element.getValue()));
+                assertTrue(table.remove(element.getValue()));
+            }
+            assertEquals(new HashSet<>(keys), seen);
+            assertEquals(0, table.size());
+        }
+    }
+
+    // Adding in the middle of a loop, growing the table and all, doesn't break it. The loop only sees what was there when it started
+    @Test
+    public void testGrowWhileIterating(){
+        StringHashTable table = new StringHashTable();
+        for(int i = 0; i < 10; i++)
+            table.put("k" + i, value("k" + i));
+        int count = 0;
+        for(InterpreterDataType element : table.values()){
+            count++;
+            for(int i = 0; i < 100; i++)
+                table.put(element.getValue() + "/" + i, value("new"));
+        }
+        assertEquals(10, count);
+        assertEquals(1010, table.size());
+    }
+}